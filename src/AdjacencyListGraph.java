@@ -46,6 +46,19 @@ public class AdjacencyListGraph implements GraphADT {
     public List<String> getAdjacentVertices(String vertex) {
         return adjacencyMap.getOrDefault(vertex, new ArrayList<>());
     }
+    public CsrGraph snapshot() {
+        CsrGraph.Builder builder = CsrGraph.builder();
+        for (String vertex : adjacencyMap.keySet()) {
+            builder.addVertex(vertex);
+        }
+        for (Map.Entry<String, List<String>> entry : adjacencyMap.entrySet()) {
+            for (String neighbor : entry.getValue()) {
+                builder.addEdge(entry.getKey(), neighbor);
+            }
+        }
+        return builder.build();
+    }
+
     @Override
     public void clear() {
         adjacencyMap.clear();
@@ -31,6 +31,7 @@ public class AdminPage extends Application {
 
         Button logoutButton = new Button("Logout");
         logoutButton.setOnAction(e -> {
+            MongoDBConnection.shutdown();
             primaryStage.close();
             new LoginPage().start(new Stage());
         });
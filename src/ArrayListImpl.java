@@ -4,7 +4,11 @@ public class ArrayListImpl<T> implements ListADT<T> {
     private static final int DEFAULT_CAPACITY = 10;
 
     public ArrayListImpl() {
-        elements = new Object[DEFAULT_CAPACITY];
+        this(DEFAULT_CAPACITY);
+    }
+
+    public ArrayListImpl(int initialCapacity) {
+        elements = new Object[Math.max(initialCapacity, 1)];
         size = 0;
     }
 
@@ -20,16 +24,36 @@ public class ArrayListImpl<T> implements ListADT<T> {
     public boolean remove(T element) {
         for (int i = 0; i < size; i++) {
             if (elements[i].equals(element)) {
-                for (int j = i; j < size - 1; j++) {
-                    elements[j] = elements[j + 1];
-                }
-                elements[--size] = null;
+                removeAt(i);
                 return true;
             }
         }
         return false;
     }
 
+    @Override
+    public T removeAt(int index) {
+        T removed = get(index);
+        System.arraycopy(elements, index + 1, elements, index, size - index - 1);
+        elements[--size] = null;
+        return removed;
+    }
+
+    // O(1) removal that fills the hole with the last element, so order is not preserved.
+    @Override
+    public T swapRemove(int index) {
+        T removed = get(index);
+        elements[index] = elements[size - 1];
+        elements[--size] = null;
+        return removed;
+    }
+
+    @Override
+    public void set(int index, T element) {
+        if (index < 0 || index >= size) throw new IndexOutOfBoundsException();
+        elements[index] = element;
+    }
+
     @SuppressWarnings("unchecked")
     @Override
     public T get(int index) {
@@ -1,22 +1,41 @@
-import java.util.ArrayList;
 import java.util.Date;
-import java.util.List;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.DoubleSupplier;
 
+// Prices are written by the simulator thread while the UI and exports read.
+// Each asset is a seqlock: writers take the write lock of a StampedLock and
+// readers use optimistic stamps, retrying if a write overlapped, so reads
+// never block the writer. A single getter is always consistent with itself;
+// use snapshot() or copyHistory() when several values must agree.
 public class Asset implements Comparable<Asset> {
     private String name;
     private String type;
     private double currentPrice;
     private double quantity;
     private double value;
-    private List<Double> priceHistory = new ArrayList<>();
+    private final PriceHistory priceHistory;
+    private final RunningStats stats = new RunningStats();
+    private final RunningStats windowStats = new RunningStats();
+    private final DrawdownTracker drawdown = new DrawdownTracker();
+    private int evictionsSinceResync;
+    private final StampedLock lock = new StampedLock();
 
     public Asset(String name, String type, double currentPrice, double quantity, Date date) {
+        this(name, type, currentPrice, quantity, date, PriceHistory.DEFAULT_CAPACITY);
+    }
+
+    public Asset(String name, String type, double currentPrice, double quantity, Date date, int historyDepth) {
         this.name = name;
         this.type = type;
         this.currentPrice = currentPrice;
         this.quantity = quantity;
         this.value = currentPrice * quantity;
-        priceHistory.add(currentPrice);
+        this.priceHistory = new PriceHistory(historyDepth, true);
+        long timestamp = date != null ? date.getTime() : System.currentTimeMillis();
+        priceHistory.add(currentPrice, timestamp);
+        stats.add(currentPrice);
+        windowStats.add(currentPrice);
+        drawdown.update(currentPrice, timestamp);
     }
 
     public String getName() {
@@ -28,40 +47,281 @@ public class Asset implements Comparable<Asset> {
     }
 
     public double getCurrentPrice() {
-        return currentPrice;
+        return read(() -> currentPrice);
     }
 
     public double getQuantity() {
-        return quantity;
+        return read(() -> quantity);
     }
 
     public double getValue() {
-        return value;
+        return read(() -> value);
+    }
+
+    public void setType(String type) {
+        long stamp = lock.writeLock();
+        try {
+            this.type = type;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
     }
 
-    public List<Double> getPriceHistory() {
+    public void setQuantity(double quantity) {
+        long stamp = lock.writeLock();
+        try {
+            this.quantity = quantity;
+            this.value = currentPrice * quantity;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    // The live buffer, for code on the thread that writes prices. Other
+    // threads should use copyHistory().
+    public PriceHistory getPriceHistory() {
         return priceHistory;
     }
 
+    public int getHistorySize() {
+        return (int) read(priceHistory::size);
+    }
+
+    public double getHistoricalPrice(int index) {
+        while (true) {
+            long stamp = lock.tryOptimisticRead();
+            try {
+                double price = priceHistory.get(index);
+                if (lock.validate(stamp)) {
+                    return price;
+                }
+            } catch (IndexOutOfBoundsException e) {
+                if (lock.validate(stamp)) {
+                    throw e;
+                }
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    // Copies the retained history oldest-first, as of one moment, into
+    // prices (and times, if not null) from offset. Returns the number of
+    // samples, or -n if the arrays have room for fewer than the n retained.
+    public int copyHistory(double[] prices, long[] times, int offset) {
+        while (true) {
+            long stamp = lock.tryOptimisticRead();
+            try {
+                int n = priceHistory.size();
+                if (offset + n > prices.length || (times != null && offset + n > times.length)) {
+                    if (lock.validate(stamp)) {
+                        return -n;
+                    }
+                } else {
+                    priceHistory.copyTo(prices, offset);
+                    if (times != null) {
+                        priceHistory.copyTimestampsTo(times, offset);
+                    }
+                    if (lock.validate(stamp)) {
+                        return n;
+                    }
+                }
+            } catch (RuntimeException e) {
+                // Indices read mid-write; the stamp check below retries.
+                if (lock.validate(stamp)) {
+                    throw e;
+                }
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    // Copies the newest min(count, size) prices, oldest first, as of one
+    // moment, into dest from offset and returns how many were copied.
+    public int copyRecentHistory(double[] dest, int offset, int count) {
+        while (true) {
+            long stamp = lock.tryOptimisticRead();
+            try {
+                int size = priceHistory.size();
+                int n = Math.min(count, size);
+                for (int k = 0; k < n; k++) {
+                    dest[offset + k] = priceHistory.get(size - n + k);
+                }
+                if (lock.validate(stamp)) {
+                    return n;
+                }
+            } catch (RuntimeException e) {
+                if (lock.validate(stamp)) {
+                    throw e;
+                }
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    // Price, quantity, value and the derived statistics as of one moment.
+    public Snapshot snapshot() {
+        while (true) {
+            long stamp = lock.tryOptimisticRead();
+            Snapshot snapshot = new Snapshot(name, type, currentPrice, quantity, value,
+                    stats.getStdDev(), returnOf(stats), drawdown.getMaxDrawdown(),
+                    drawdown.getCurrentDrawdown(), stats.getCount());
+            if (lock.validate(stamp)) {
+                return snapshot;
+            }
+            Thread.onSpinWait();
+        }
+    }
+
     public void setCurrentPrice(double newPrice) {
+        setCurrentPrice(newPrice, System.currentTimeMillis());
+    }
+
+    public void setCurrentPrice(double newPrice, long timestamp) {
+        long stamp = lock.writeLock();
+        try {
+            publishPrice(newPrice, timestamp);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    private void publishPrice(double newPrice, long timestamp) {
         this.currentPrice = newPrice;
         this.value = newPrice * quantity;
-        priceHistory.add(newPrice);
+        if (priceHistory.isFull()) {
+            windowStats.remove(priceHistory.getFirst());
+            evictionsSinceResync++;
+        }
+        priceHistory.add(newPrice, timestamp);
+        stats.add(newPrice);
+        windowStats.add(newPrice);
+        drawdown.update(newPrice, timestamp);
+        if (evictionsSinceResync >= priceHistory.capacity()) {
+            resyncWindowStats();
+        }
+    }
+
+    public void resetPriceHistory() {
+        long stamp = lock.writeLock();
+        try {
+            clearHistory();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    private void clearHistory() {
+        long timestamp = System.currentTimeMillis();
+        priceHistory.clear();
+        priceHistory.add(currentPrice, timestamp);
+        stats.clear();
+        stats.add(currentPrice);
+        resyncWindowStats();
+        drawdown.reset();
+        drawdown.update(currentPrice, timestamp);
+    }
+
+    // Replaces the history with prices[from, to) stamped with times[from, to),
+    // oldest first, as read back from a snapshot. The last sample becomes the
+    // current price; lifetime statistics restart from the restored samples.
+    public void restoreHistory(double[] prices, long[] times, int from, int to) {
+        if (from >= to) throw new IllegalArgumentException("History must not be empty");
+        long stamp = lock.writeLock();
+        try {
+            replaceHistory(prices, times, from, to);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    private void replaceHistory(double[] prices, long[] times, int from, int to) {
+        priceHistory.clear();
+        stats.clear();
+        drawdown.reset();
+        for (int i = from; i < to; i++) {
+            priceHistory.add(prices[i], times[i]);
+            stats.add(prices[i]);
+            drawdown.update(prices[i], times[i]);
+        }
+        currentPrice = prices[to - 1];
+        value = currentPrice * quantity;
+        resyncWindowStats();
     }
 
     public double getReturn() {
-        if (priceHistory.isEmpty())
+        return read(() -> returnOf(stats));
+    }
+
+    private static double returnOf(RunningStats stats) {
+        double initial = stats.getFirst();
+        if (stats.getCount() == 0 || initial == 0)
             return 0;
-        double initial = priceHistory.get(0);
-        return ((currentPrice - initial) / initial) * 100;
+        return ((stats.getLast() - initial) / initial) * 100;
     }
 
     public double getVolatility() {
-        if (priceHistory.size() < 2)
-            return 0;
-        double mean = priceHistory.stream().mapToDouble(Double::doubleValue).average().orElse(0);
-        double variance = priceHistory.stream().mapToDouble(p -> Math.pow(p - mean, 2)).average().orElse(0);
-        return Math.sqrt(variance);
+        return read(stats::getStdDev);
+    }
+
+    public double getMeanPrice() {
+        return read(stats::getMean);
+    }
+
+    public long getSampleCount() {
+        return (long) read(() -> stats.getCount());
+    }
+
+    public double getWindowVolatility() {
+        return read(windowStats::getStdDev);
+    }
+
+    public double getWindowReturn() {
+        return read(() -> {
+            if (priceHistory.isEmpty() || priceHistory.getFirst() == 0)
+                return 0;
+            return ((priceHistory.getLast() - priceHistory.getFirst()) / priceHistory.getFirst()) * 100;
+        });
+    }
+
+    public double getMaxDrawdown() {
+        return read(drawdown::getMaxDrawdown);
+    }
+
+    public double getCurrentDrawdown() {
+        return read(drawdown::getCurrentDrawdown);
+    }
+
+    // Optimistic read: retried until no write overlapped it. A read that
+    // saw indices mid-write may throw; that is retried the same way.
+    private double read(DoubleSupplier field) {
+        while (true) {
+            long stamp = lock.tryOptimisticRead();
+            try {
+                double result = field.getAsDouble();
+                if (lock.validate(stamp)) {
+                    return result;
+                }
+            } catch (RuntimeException e) {
+                if (lock.validate(stamp)) {
+                    throw e;
+                }
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    public DrawdownTracker getDrawdown() {
+        return drawdown;
+    }
+
+    // Removing evicted samples accumulates rounding error, so the window
+    // statistics are rebuilt from the buffer once per full turn of the ring.
+    private void resyncWindowStats() {
+        windowStats.clear();
+        for (int i = 0; i < priceHistory.size(); i++) {
+            windowStats.add(priceHistory.get(i));
+        }
+        evictionsSinceResync = 0;
     }
 
    
@@ -74,6 +334,35 @@ public class Asset implements Comparable<Asset> {
 
     @Override
     public String toString() {
-        return name + " (" + type + ") - " + quantity + " at $" + String.format("%.2f", currentPrice);
+        Snapshot s = snapshot();
+        return name + " (" + s.type + ") - " + s.quantity + " at $" + String.format("%.2f", s.price);
+    }
+
+    // Immutable view of an asset at one moment.
+    public static final class Snapshot {
+        public final String name;
+        public final String type;
+        public final double price;
+        public final double quantity;
+        public final double value;
+        public final double volatility;
+        public final double returnPercent;
+        public final double maxDrawdown;
+        public final double currentDrawdown;
+        public final long samples;
+
+        Snapshot(String name, String type, double price, double quantity, double value, double volatility,
+                 double returnPercent, double maxDrawdown, double currentDrawdown, long samples) {
+            this.name = name;
+            this.type = type;
+            this.price = price;
+            this.quantity = quantity;
+            this.value = value;
+            this.volatility = volatility;
+            this.returnPercent = returnPercent;
+            this.maxDrawdown = maxDrawdown;
+            this.currentDrawdown = currentDrawdown;
+            this.samples = samples;
+        }
     }
 }
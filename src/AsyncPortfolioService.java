@@ -0,0 +1,133 @@
+import java.util.Date;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+// What the panels call instead of PortfolioManager's mutators. Each change is
+// applied to the in-memory portfolio straight away, so the UI redraws without
+// waiting, and is written on the I/O pool. If the write fails the change is
+// undone on the UI executor and the returned future fails with the cause.
+//
+// Every method must be called on the UI thread; completions and rollbacks
+// are delivered there too.
+public class AsyncPortfolioService {
+    private final PortfolioManager portfolio;
+    private final IoExecutor io;
+    private final Executor ui;
+    private CompletableFuture<Void> goalsLoading;
+
+    public AsyncPortfolioService(PortfolioManager portfolio, IoExecutor io, Executor ui) {
+        this.portfolio = portfolio;
+        this.io = io;
+        this.ui = ui;
+    }
+
+    public IoExecutor io() {
+        return io;
+    }
+
+    public CompletableFuture<Void> addAsset(Asset asset) {
+        Asset existing = portfolio.findAsset(asset.getName());
+        if (existing != null) {
+            return editAsset(existing, asset);
+        }
+        return onUi(portfolio.addAsset(asset), () -> portfolio.forgetAsset(asset.getName()));
+    }
+
+    public CompletableFuture<Void> editAsset(Asset oldAsset, Asset updatedAsset) {
+        if (!oldAsset.getName().equals(updatedAsset.getName())) {
+            return CompletableFuture.allOf(deleteAsset(oldAsset), addAsset(updatedAsset));
+        }
+        String type = oldAsset.getType();
+        double quantity = oldAsset.getQuantity();
+        double price = oldAsset.getCurrentPrice();
+        return onUi(portfolio.editAsset(oldAsset, updatedAsset), () -> {
+            oldAsset.setType(type);
+            oldAsset.setQuantity(quantity);
+            if (oldAsset.getCurrentPrice() != price) {
+                oldAsset.setCurrentPrice(price);
+            }
+        });
+    }
+
+    public CompletableFuture<Void> deleteAsset(Asset asset) {
+        return onUi(portfolio.deleteAsset(asset.getName()), () -> portfolio.restoreAsset(asset));
+    }
+
+    // Loads the goals first if needed, since a later load would replace
+    // the list.
+    public CompletableFuture<Void> addGoal(String name, double target, Date deadline) {
+        if (!portfolio.goalsLoaded()) {
+            return loadGoals().thenCompose(v -> addGoal(name, target, deadline));
+        }
+        CompletableFuture<Void> write = portfolio.addGoal(name, target, deadline);
+        ListADT<Goal> goals = portfolio.getGoals();
+        Goal added = goals.get(goals.size() - 1);
+        return onUi(write, () -> portfolio.forgetGoal(added));
+    }
+
+    // Reads the stored holdings on the I/O pool and installs them on the UI
+    // thread. Goals are refreshed too if they have been loaded already;
+    // otherwise they wait for loadGoals().
+    public CompletableFuture<Void> load(String username) {
+        boolean withGoals = portfolio.goalsLoaded();
+        return io.supply(() -> withGoals ? portfolio.fetchPortfolio(username) : portfolio.fetchHoldings(username))
+                .thenAcceptAsync(data -> {
+                    if (withGoals) {
+                        portfolio.applyPortfolio(data);
+                    } else {
+                        portfolio.applyHoldings(data);
+                    }
+                }, ui);
+    }
+
+    // Fetches the current user's goals the first time a view needs them.
+    // Concurrent callers share one request.
+    public CompletableFuture<Void> loadGoals() {
+        String currentUser = portfolio.getUsername();
+        if (portfolio.goalsLoaded() || currentUser == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        if (goalsLoading == null) {
+            goalsLoading = io.supply(() -> portfolio.fetchGoals(currentUser))
+                    .handleAsync((entries, error) -> {
+                        goalsLoading = null;
+                        if (error != null) {
+                            throw error instanceof CompletionException
+                                    ? (CompletionException) error : new CompletionException(error);
+                        }
+                        if (!portfolio.goalsLoaded()) {
+                            portfolio.applyGoals(entries);
+                        }
+                        return null;
+                    }, ui);
+        }
+        return goalsLoading;
+    }
+
+    // Reloads if a write found the stored portfolio changed by someone else;
+    // otherwise completes at once.
+    public CompletableFuture<Void> reloadIfStale() {
+        String currentUser = portfolio.getUsername();
+        if (currentUser == null || !portfolio.consumeStale(currentUser)) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return load(currentUser);
+    }
+
+    private CompletableFuture<Void> onUi(CompletableFuture<Void> write, Runnable rollback) {
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        write.whenCompleteAsync((value, error) -> {
+            if (error == null) {
+                result.complete(null);
+                return;
+            }
+            try {
+                rollback.run();
+            } finally {
+                result.completeExceptionally(error);
+            }
+        }, ui);
+        return result;
+    }
+}
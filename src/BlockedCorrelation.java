@@ -0,0 +1,178 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+// Batch correlation for large universes. Every series is standardised once
+// into a contiguous row of a double[] so that correlation(i, j) is the dot
+// product of rows i and j; the Gram matrix is then computed tile by tile on
+// a ForkJoinPool, each task owning a square block of the output.
+public class BlockedCorrelation {
+    private static final int TILE = 64;
+    private static final int DEPTH_TILE = 1024;
+    private static final int PARALLEL_TILE_PAIRS = 4;
+
+    // Correlates the most recent `window` samples of each asset's history,
+    // aligned on the newest sample. A shorter history is padded with its
+    // oldest sample, which adds no variance, so one new holding does not
+    // cut every other series down to its length.
+    public static CorrelationMatrix compute(ListADT<Asset> assets, int window) {
+        int n = assets.size();
+        int len = 0;
+        for (int i = 0; i < n; i++) {
+            len = Math.max(len, Math.min(window, assets.get(i).getHistorySize()));
+        }
+        String[] symbols = new String[n];
+        double[] data = new double[n * Math.max(len, 0)];
+        for (int i = 0; i < n; i++) {
+            Asset asset = assets.get(i);
+            symbols[i] = asset.getName();
+            // Each row is a consistent copy even while the simulator appends.
+            int copied = asset.copyRecentHistory(data, i * len, len);
+            if (copied < len) {
+                // Shorter than the longest, or reset since it was measured;
+                // hold the oldest sample flat ahead of what there is.
+                System.arraycopy(data, i * len, data, i * len + len - copied, copied);
+                java.util.Arrays.fill(data, i * len, i * len + len - copied, copied > 0 ? data[i * len + len - copied] : 0);
+            }
+        }
+        return compute(symbols, data, len, ForkJoinPool.commonPool());
+    }
+
+    // series holds n = symbols.length rows of len samples each, row-major.
+    // The array is standardised in place.
+    public static CorrelationMatrix compute(String[] symbols, double[] series, int len, ForkJoinPool pool) {
+        int n = symbols.length;
+        double[] out = new double[n * n];
+        if (len >= 2) {
+            standardize(series, n, len);
+            gram(series, n, len, out, pool);
+            for (int i = 0; i < n; i++) {
+                for (int j = 0; j < n; j++) {
+                    double c = out[i * n + j];
+                    out[i * n + j] = c > 1 ? 1 : (c < -1 ? -1 : c);
+                }
+            }
+        }
+        return new CorrelationMatrix(symbols, out);
+    }
+
+    // Scales each row to zero mean and unit norm. Flat rows become all zeros
+    // and so correlate 0 with everything, themselves included.
+    public static void standardize(double[] series, int n, int len) {
+        for (int i = 0; i < n; i++) {
+            int base = i * len;
+            double mean = 0;
+            for (int k = 0; k < len; k++) {
+                mean += series[base + k];
+            }
+            mean /= len;
+            double norm = 0;
+            for (int k = 0; k < len; k++) {
+                double d = series[base + k] - mean;
+                series[base + k] = d;
+                norm += d * d;
+            }
+            double scale = norm > 0 ? 1 / Math.sqrt(norm) : 0;
+            for (int k = 0; k < len; k++) {
+                series[base + k] *= scale;
+            }
+        }
+    }
+
+    // out[i * n + j] = dot(row i, row j) for the n rows of length len in data.
+    public static void gram(double[] data, int n, int len, double[] out, ForkJoinPool pool) {
+        int tiles = (n + TILE - 1) / TILE;
+        int pairs = tiles * (tiles + 1) / 2;
+        if (pairs <= PARALLEL_TILE_PAIRS || pool.getParallelism() <= 1) {
+            for (int p = 0; p < pairs; p++) {
+                computeTilePair(data, n, len, out, tiles, p);
+            }
+        } else {
+            pool.invoke(new GramTask(data, n, len, out, tiles, 0, pairs));
+        }
+    }
+
+    private static void computeTilePair(double[] data, int n, int len, double[] out, int tiles, int pair) {
+        int bi = 0;
+        int remaining = pair;
+        while (remaining >= tiles - bi) {
+            remaining -= tiles - bi;
+            bi++;
+        }
+        int bj = bi + remaining;
+        int iStart = bi * TILE, iEnd = Math.min(iStart + TILE, n);
+        int jStart = bj * TILE, jEnd = Math.min(jStart + TILE, n);
+
+        for (int i = iStart; i < iEnd; i++) {
+            int jFrom = bi == bj ? i : jStart;
+            for (int j = jFrom; j < jEnd; j++) {
+                out[i * n + j] = 0;
+            }
+        }
+        for (int kStart = 0; kStart < len; kStart += DEPTH_TILE) {
+            int kEnd = Math.min(kStart + DEPTH_TILE, len);
+            for (int i = iStart; i < iEnd; i++) {
+                int jFrom = bi == bj ? i : jStart;
+                for (int j = jFrom; j < jEnd; j++) {
+                    out[i * n + j] += dot(data, i * len, j * len, kStart, kEnd);
+                }
+            }
+        }
+        for (int i = iStart; i < iEnd; i++) {
+            int jFrom = bi == bj ? i + 1 : jStart;
+            for (int j = jFrom; j < jEnd; j++) {
+                out[j * n + i] = out[i * n + j];
+            }
+        }
+    }
+
+    // Four independent accumulators break the add dependency chain so the JIT
+    // can keep several multiply-adds in flight.
+    private static double dot(double[] data, int a, int b, int from, int to) {
+        double s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        int k = from;
+        for (; k + 3 < to; k += 4) {
+            s0 += data[a + k] * data[b + k];
+            s1 += data[a + k + 1] * data[b + k + 1];
+            s2 += data[a + k + 2] * data[b + k + 2];
+            s3 += data[a + k + 3] * data[b + k + 3];
+        }
+        for (; k < to; k++) {
+            s0 += data[a + k] * data[b + k];
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    @SuppressWarnings("serial")
+    private static class GramTask extends RecursiveAction {
+        private final double[] data;
+        private final int n;
+        private final int len;
+        private final double[] out;
+        private final int tiles;
+        private final int from;
+        private final int to;
+
+        GramTask(double[] data, int n, int len, double[] out, int tiles, int from, int to) {
+            this.data = data;
+            this.n = n;
+            this.len = len;
+            this.out = out;
+            this.tiles = tiles;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= PARALLEL_TILE_PAIRS) {
+                for (int p = from; p < to; p++) {
+                    computeTilePair(data, n, len, out, tiles, p);
+                }
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new GramTask(data, n, len, out, tiles, from, mid),
+                      new GramTask(data, n, len, out, tiles, mid, to));
+        }
+    }
+}
@@ -0,0 +1,48 @@
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+
+// Times BlockedCorrelation on a synthetic universe with 1, 2, 4 ... N worker
+// threads. Usage: java CorrelationBenchmark [symbols] [samples] [rounds]
+public class CorrelationBenchmark {
+    public static void main(String[] args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int len = args.length > 1 ? Integer.parseInt(args[1]) : 256;
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+        SplittableRandom random = new SplittableRandom(42);
+        double[] source = new double[n * len];
+        for (int i = 0; i < n; i++) {
+            double price = 100;
+            for (int k = 0; k < len; k++) {
+                price = Math.max(1, price + (random.nextDouble() - 0.5) * 10);
+                source[i * len + k] = price;
+            }
+        }
+        String[] symbols = new String[n];
+        for (int i = 0; i < n; i++) {
+            symbols[i] = "SYM" + i;
+        }
+
+        int cores = Runtime.getRuntime().availableProcessors();
+        double baseline = 0;
+        for (int threads = 1; threads <= cores; threads = threads == cores ? cores + 1 : Math.min(threads * 2, cores)) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            double best = Double.MAX_VALUE;
+            for (int r = 0; r < rounds + 1; r++) {
+                double[] series = source.clone();
+                long start = System.nanoTime();
+                BlockedCorrelation.compute(symbols, series, len, pool);
+                double ms = (System.nanoTime() - start) / 1e6;
+                if (r > 0) {
+                    best = Math.min(best, ms);
+                }
+            }
+            pool.shutdown();
+            if (threads == 1) {
+                baseline = best;
+            }
+            System.out.printf("%d symbols x %d samples, %2d threads: %8.1f ms (%.2fx)%n",
+                    n, len, threads, best, baseline / best);
+        }
+    }
+}
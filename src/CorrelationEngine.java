@@ -0,0 +1,323 @@
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+// Rolling Pearson correlation over the last `window` ticks of every tracked
+// series. Each tick is one row holding a price per series; the engine keeps
+// running sums of x, x^2 and x*y per pair, so a full tick costs O(n^2), a
+// single-series update inside the current tick costs O(n), and any pair or
+// the full matrix is read straight from the sums.
+//
+// The sums are kept over each price minus a per-series shift (the seed
+// price, then the oldest retained price after each rebuild), so they stay
+// near zero and n*sxx - sx*sx does not cancel away the variance. A series
+// whose variance is within rounding of zero is flat and, as in
+// BlockedCorrelation, correlates 0 with everything, itself included.
+public class CorrelationEngine {
+    public static final int DEFAULT_WINDOW = 256;
+    // Variance below this fraction of n*sxx is rounding error.
+    private static final double FLAT = 1e-10;
+
+    private final int window;
+    private final Map<String, Integer> ids = new HashMap<>();
+    private String[] symbols;
+    private int n;
+    private int capacity;
+
+    private double[][] rows;
+    private int head;
+    private int count;
+    private int current = -1;
+    private double[] last;
+
+    private double[] shift;
+    private double[] sx;
+    private double[] sxx;
+    private double[] sxy;
+    private int evictionsSinceRebuild;
+
+    private double[] scratch;
+    private int[] seen;
+    private int generation;
+
+    public CorrelationEngine() {
+        this(DEFAULT_WINDOW);
+    }
+
+    public CorrelationEngine(int window) {
+        if (window < 2) throw new IllegalArgumentException("Window must hold at least two ticks");
+        this.window = window;
+        allocate(16);
+    }
+
+    public int getWindow() {
+        return window;
+    }
+
+    public synchronized int size() {
+        return n;
+    }
+
+    public synchronized int sampleCount() {
+        return count;
+    }
+
+    // Starts tracking a series. Ticks already in the window are backfilled
+    // with the seed price, which contributes no variance.
+    public synchronized int track(String symbol, double seedPrice) {
+        Integer existing = ids.get(symbol);
+        if (existing != null) {
+            return existing;
+        }
+        if (n == capacity) {
+            grow(capacity * 2);
+        }
+        int id = n++;
+        symbols[id] = symbol;
+        ids.put(symbol, id);
+        last[id] = seedPrice;
+        for (int r = 0; r < count; r++) {
+            rows[(head + r) % window][id] = seedPrice;
+        }
+        shift[id] = seedPrice;
+        sx[id] = 0;
+        sxx[id] = 0;
+        for (int i = 0; i < id; i++) {
+            sxy[i * capacity + id] = 0;
+        }
+        return id;
+    }
+
+    // Stops tracking a series; the last series is moved into its slot.
+    public synchronized boolean untrack(String symbol) {
+        Integer removed = ids.remove(symbol);
+        if (removed == null) {
+            return false;
+        }
+        int id = removed;
+        int tail = n - 1;
+        if (id != tail) {
+            for (int r = 0; r < count; r++) {
+                double[] row = rows[(head + r) % window];
+                row[id] = row[tail];
+            }
+            for (int k = 0; k < tail; k++) {
+                if (k != id) {
+                    sxy[pair(k, id)] = sxy[pair(k, tail)];
+                }
+            }
+            shift[id] = shift[tail];
+            sx[id] = sx[tail];
+            sxx[id] = sxx[tail];
+            last[id] = last[tail];
+            symbols[id] = symbols[tail];
+            ids.put(symbols[id], id);
+        }
+        symbols[tail] = null;
+        n--;
+        return true;
+    }
+
+    // Appends a tick with one price per tracked series, indexed by id.
+    public synchronized void tick(double[] prices) {
+        System.arraycopy(prices, 0, last, 0, n);
+        pushRow(last);
+    }
+
+    // Opens a new tick that carries every series' last price forward, so
+    // update() can then move individual series within it.
+    public synchronized void advance() {
+        pushRow(last);
+    }
+
+    public synchronized void update(String symbol, double price) {
+        Integer id = ids.get(symbol);
+        if (id == null) {
+            id = track(symbol, price);
+        }
+        update(id, price);
+    }
+
+    public synchronized void update(int id, double price) {
+        if (current < 0) {
+            last[id] = price;
+            pushRow(last);
+            return;
+        }
+        double[] row = rows[current];
+        double old = row[id] - shift[id];
+        double now = price - shift[id];
+        double delta = now - old;
+        sx[id] += delta;
+        sxx[id] += now * now - old * old;
+        for (int k = 0; k < n; k++) {
+            if (k != id) {
+                sxy[pair(k, id)] += delta * (row[k] - shift[k]);
+            }
+        }
+        row[id] = price;
+        last[id] = price;
+    }
+
+    // Synchronises the tracked set with the given assets and records one tick
+    // of their current prices.
+    public synchronized void sample(ListADT<Asset> assets) {
+        generation++;
+        for (int i = 0; i < assets.size(); i++) {
+            Asset asset = assets.get(i);
+            int id = track(asset.getName(), asset.getCurrentPrice());
+            seen[id] = generation;
+            scratch[id] = asset.getCurrentPrice();
+        }
+        for (int id = n - 1; id >= 0; id--) {
+            if (seen[id] != generation) {
+                untrack(symbols[id]);
+                scratch[id] = scratch[n];
+                seen[id] = seen[n];
+            }
+        }
+        tick(scratch);
+    }
+
+    public synchronized double correlation(String a, String b) {
+        Integer i = ids.get(a);
+        Integer j = ids.get(b);
+        if (i == null || j == null)
+            return 0;
+        return correlation(i, j);
+    }
+
+    public synchronized double correlation(int i, int j) {
+        if (count < 2)
+            return 0;
+        double varI = count * sxx[i] - sx[i] * sx[i];
+        if (varI <= FLAT * count * sxx[i])
+            return 0;
+        if (i == j)
+            return 1;
+        double varJ = count * sxx[j] - sx[j] * sx[j];
+        if (varJ <= FLAT * count * sxx[j])
+            return 0;
+        double cov = count * sxy[pair(i, j)] - sx[i] * sx[j];
+        double corr = cov / Math.sqrt(varI * varJ);
+        return Math.max(-1, Math.min(1, corr));
+    }
+
+    public synchronized CorrelationMatrix matrix() {
+        String[] names = Arrays.copyOf(symbols, n);
+        double[] values = new double[n * n];
+        for (int i = 0; i < n; i++) {
+            values[i * n + i] = correlation(i, i);
+            for (int j = i + 1; j < n; j++) {
+                double corr = correlation(i, j);
+                values[i * n + j] = corr;
+                values[j * n + i] = corr;
+            }
+        }
+        return new CorrelationMatrix(names, values);
+    }
+
+    // Recomputes the running sums from the retained ticks. Subtracting
+    // evicted ticks accumulates rounding error, so this also runs once per
+    // full turn of the window. The pair sums are the Gram matrix of the
+    // window and reuse BlockedCorrelation's tiled parallel kernel. Each
+    // shift moves to the series' oldest retained price, which keeps the
+    // sums small however far the price has drifted since it was tracked.
+    public synchronized void rebuild() {
+        if (count > 0) {
+            System.arraycopy(rows[head], 0, shift, 0, n);
+        }
+        double[] series = new double[n * count];
+        for (int r = 0; r < count; r++) {
+            double[] row = rows[(head + r) % window];
+            for (int i = 0; i < n; i++) {
+                series[i * count + r] = row[i] - shift[i];
+            }
+        }
+        double[] gram = new double[n * n];
+        BlockedCorrelation.gram(series, n, count, gram, ForkJoinPool.commonPool());
+        for (int i = 0; i < n; i++) {
+            double sum = 0;
+            for (int r = 0; r < count; r++) {
+                sum += series[i * count + r];
+            }
+            sx[i] = sum;
+            sxx[i] = gram[i * n + i];
+            for (int j = i + 1; j < n; j++) {
+                sxy[i * capacity + j] = gram[i * n + j];
+            }
+        }
+        evictionsSinceRebuild = 0;
+    }
+
+    private void pushRow(double[] values) {
+        int slot;
+        if (count == window) {
+            slot = head;
+            accumulate(rows[slot], -1);
+            head = (head + 1) % window;
+            evictionsSinceRebuild++;
+        } else {
+            slot = (head + count) % window;
+            count++;
+        }
+        System.arraycopy(values, 0, rows[slot], 0, n);
+        current = slot;
+        if (evictionsSinceRebuild >= window) {
+            rebuild();
+        } else {
+            accumulate(rows[slot], 1);
+        }
+    }
+
+    private void accumulate(double[] row, int sign) {
+        for (int i = 0; i < n; i++) {
+            double d = row[i] - shift[i];
+            double x = sign * d;
+            sx[i] += x;
+            sxx[i] += x * d;
+            int base = i * capacity;
+            for (int j = i + 1; j < n; j++) {
+                sxy[base + j] += x * (row[j] - shift[j]);
+            }
+        }
+    }
+
+    private int pair(int i, int j) {
+        return i < j ? i * capacity + j : j * capacity + i;
+    }
+
+    private void allocate(int size) {
+        capacity = size;
+        symbols = new String[size];
+        rows = new double[window][size];
+        last = new double[size];
+        shift = new double[size];
+        sx = new double[size];
+        sxx = new double[size];
+        sxy = new double[size * size];
+        scratch = new double[size];
+        seen = new int[size];
+    }
+
+    private void grow(int size) {
+        int oldCapacity = capacity;
+        double[] oldSxy = sxy;
+        symbols = Arrays.copyOf(symbols, size);
+        for (int r = 0; r < window; r++) {
+            rows[r] = Arrays.copyOf(rows[r], size);
+        }
+        last = Arrays.copyOf(last, size);
+        shift = Arrays.copyOf(shift, size);
+        sx = Arrays.copyOf(sx, size);
+        sxx = Arrays.copyOf(sxx, size);
+        scratch = Arrays.copyOf(scratch, size);
+        seen = Arrays.copyOf(seen, size);
+        sxy = new double[size * size];
+        for (int i = 0; i < n; i++) {
+            System.arraycopy(oldSxy, i * oldCapacity, sxy, i * size, n);
+        }
+        capacity = size;
+    }
+}
@@ -0,0 +1,64 @@
+import java.util.HashMap;
+import java.util.Map;
+
+// Dense symmetric correlation matrix, row-major, with the symbol of each row.
+public class CorrelationMatrix {
+    private final String[] symbols;
+    private final double[] values;
+    private final Map<String, Integer> ids = new HashMap<>();
+
+    public CorrelationMatrix(String[] symbols, double[] values) {
+        if (values.length != symbols.length * symbols.length) {
+            throw new IllegalArgumentException("Matrix must be " + symbols.length + "x" + symbols.length);
+        }
+        this.symbols = symbols;
+        this.values = values;
+        for (int i = 0; i < symbols.length; i++) {
+            ids.put(symbols[i], i);
+        }
+    }
+
+    public int size() {
+        return symbols.length;
+    }
+
+    public String symbol(int index) {
+        return symbols[index];
+    }
+
+    public int indexOf(String symbol) {
+        Integer id = ids.get(symbol);
+        return id == null ? -1 : id;
+    }
+
+    public double get(int row, int col) {
+        return values[row * symbols.length + col];
+    }
+
+    // Unknown symbols have no history to correlate with, so they read as 0.
+    public double get(String a, String b) {
+        int i = indexOf(a);
+        int j = indexOf(b);
+        if (i < 0 || j < 0)
+            return 0;
+        return get(i, j);
+    }
+
+    // Undirected graph with an edge wherever the correlation exceeds the threshold.
+    public CsrGraph toGraph(double threshold) {
+        int n = symbols.length;
+        CsrGraph.Builder builder = CsrGraph.builder();
+        for (int i = 0; i < n; i++) {
+            builder.addVertex(symbols[i]);
+        }
+        for (int i = 0; i < n; i++) {
+            for (int j = i + 1; j < n; j++) {
+                double corr = values[i * n + j];
+                if (corr > threshold) {
+                    builder.addEdge(i, j, (float) corr);
+                }
+            }
+        }
+        return builder.build();
+    }
+}
@@ -0,0 +1,260 @@
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntConsumer;
+
+// Immutable compressed-sparse-row graph. Vertices are mapped to dense int ids;
+// the neighbours of vertex v are targets[offsets[v] .. offsets[v + 1]), kept
+// sorted so edge lookups are a binary search. Edges are undirected, like
+// AdjacencyListGraph, and stored once in each direction.
+public class CsrGraph implements GraphADT {
+
+    private final String[] vertices;
+    private final Map<String, Integer> ids;
+    private final int[] offsets;
+    private final int[] targets;
+    private final float[] weights;
+    private final int edgeCount;
+
+    private CsrGraph(String[] vertices, Map<String, Integer> ids, int[] offsets, int[] targets, float[] weights, int edgeCount) {
+        this.vertices = vertices;
+        this.ids = ids;
+        this.offsets = offsets;
+        this.targets = targets;
+        this.weights = weights;
+        this.edgeCount = edgeCount;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public int vertexCount() {
+        return vertices.length;
+    }
+
+    public int edgeCount() {
+        return edgeCount;
+    }
+
+    public int idOf(String vertex) {
+        Integer id = ids.get(vertex);
+        return id == null ? -1 : id;
+    }
+
+    public String nameOf(int id) {
+        return vertices[id];
+    }
+
+    public int degree(int vertex) {
+        return offsets[vertex + 1] - offsets[vertex];
+    }
+
+    // Neighbour k of vertex v is target(firstEdge(v) + k).
+    public int firstEdge(int vertex) {
+        return offsets[vertex];
+    }
+
+    public int target(int edge) {
+        return targets[edge];
+    }
+
+    public boolean isWeighted() {
+        return weights != null;
+    }
+
+    public float weight(int edge) {
+        return weights != null ? weights[edge] : 1f;
+    }
+
+    public boolean hasEdge(int from, int to) {
+        return findEdge(from, to) >= 0;
+    }
+
+    public boolean hasEdge(String from, String to) {
+        int a = idOf(from);
+        int b = idOf(to);
+        return a >= 0 && b >= 0 && hasEdge(a, b);
+    }
+
+    // Returns NaN when the edge does not exist.
+    public float edgeWeight(int from, int to) {
+        int edge = findEdge(from, to);
+        return edge < 0 ? Float.NaN : weight(edge);
+    }
+
+    public void forEachNeighbor(int vertex, IntConsumer action) {
+        for (int e = offsets[vertex], end = offsets[vertex + 1]; e < end; e++) {
+            action.accept(targets[e]);
+        }
+    }
+
+    private int findEdge(int from, int to) {
+        int edge = Arrays.binarySearch(targets, offsets[from], offsets[from + 1], to);
+        return edge < 0 ? -1 : edge;
+    }
+
+    @Override
+    public void addVertex(String vertex) {
+        throw new UnsupportedOperationException("CsrGraph is immutable; build a new snapshot");
+    }
+
+    @Override
+    public void addEdge(String from, String to) {
+        throw new UnsupportedOperationException("CsrGraph is immutable; build a new snapshot");
+    }
+
+    @Override
+    public boolean removeVertex(String vertex) {
+        throw new UnsupportedOperationException("CsrGraph is immutable; build a new snapshot");
+    }
+
+    @Override
+    public boolean removeEdge(String from, String to) {
+        throw new UnsupportedOperationException("CsrGraph is immutable; build a new snapshot");
+    }
+
+    // Read-only view over the vertex's slice of the target array.
+    @Override
+    public List<String> getAdjacentVertices(String vertex) {
+        int id = idOf(vertex);
+        if (id < 0) {
+            return Collections.emptyList();
+        }
+        int start = offsets[id];
+        int size = offsets[id + 1] - start;
+        return new AbstractList<String>() {
+            @Override
+            public String get(int index) {
+                if (index < 0 || index >= size) throw new IndexOutOfBoundsException();
+                return vertices[targets[start + index]];
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    @Override
+    public void clear() {
+        throw new UnsupportedOperationException("CsrGraph is immutable; build a new snapshot");
+    }
+
+    public static class Builder {
+        private final Map<String, Integer> ids = new HashMap<>();
+        private String[] names = new String[16];
+        private int vertexCount;
+        private int[] from = new int[16];
+        private int[] to = new int[16];
+        private float[] weights = new float[16];
+        private int edgeCount;
+        private boolean weighted;
+
+        public int addVertex(String vertex) {
+            Integer id = ids.get(vertex);
+            if (id != null) {
+                return id;
+            }
+            if (vertexCount == names.length) {
+                names = Arrays.copyOf(names, vertexCount * 2);
+            }
+            names[vertexCount] = vertex;
+            ids.put(vertex, vertexCount);
+            return vertexCount++;
+        }
+
+        public Builder addEdge(String a, String b) {
+            addEdge(addVertex(a), addVertex(b), 1f);
+            return this;
+        }
+
+        public Builder addEdge(String a, String b, float weight) {
+            weighted = true;
+            addEdge(addVertex(a), addVertex(b), weight);
+            return this;
+        }
+
+        public Builder addEdge(int a, int b, float weight) {
+            if (a < 0 || a >= vertexCount || b < 0 || b >= vertexCount) throw new IndexOutOfBoundsException();
+            if (weight != 1f) {
+                weighted = true;
+            }
+            if (edgeCount == from.length) {
+                from = Arrays.copyOf(from, edgeCount * 2);
+                to = Arrays.copyOf(to, edgeCount * 2);
+                weights = Arrays.copyOf(weights, edgeCount * 2);
+            }
+            from[edgeCount] = a;
+            to[edgeCount] = b;
+            weights[edgeCount] = weight;
+            edgeCount++;
+            return this;
+        }
+
+        // Counting sort by source, then each row is sorted by target and
+        // duplicate edges collapse to the first one seen.
+        public CsrGraph build() {
+            int n = vertexCount;
+            int[] offsets = new int[n + 1];
+            for (int e = 0; e < edgeCount; e++) {
+                offsets[from[e] + 1]++;
+                if (from[e] != to[e]) {
+                    offsets[to[e] + 1]++;
+                }
+            }
+            for (int v = 0; v < n; v++) {
+                offsets[v + 1] += offsets[v];
+            }
+            long[] packed = new long[offsets[n]];
+            int[] cursor = Arrays.copyOf(offsets, n);
+            for (int e = 0; e < edgeCount; e++) {
+                packed[cursor[from[e]]++] = pack(to[e], e);
+                if (from[e] != to[e]) {
+                    packed[cursor[to[e]]++] = pack(from[e], e);
+                }
+            }
+
+            int[] targets = new int[packed.length];
+            float[] edgeWeights = weighted ? new float[packed.length] : null;
+            int write = 0;
+            int distinctEdges = 0;
+            int[] compacted = new int[n + 1];
+            for (int v = 0; v < n; v++) {
+                Arrays.sort(packed, offsets[v], offsets[v + 1]);
+                int previous = -1;
+                for (int i = offsets[v]; i < offsets[v + 1]; i++) {
+                    int target = (int) (packed[i] >>> 32);
+                    if (target == previous) {
+                        continue;
+                    }
+                    targets[write] = target;
+                    if (edgeWeights != null) {
+                        edgeWeights[write] = weights[(int) packed[i]];
+                    }
+                    write++;
+                    previous = target;
+                    if (target >= v) {
+                        distinctEdges++;
+                    }
+                }
+                compacted[v + 1] = write;
+            }
+            if (write < targets.length) {
+                targets = Arrays.copyOf(targets, write);
+                if (edgeWeights != null) {
+                    edgeWeights = Arrays.copyOf(edgeWeights, write);
+                }
+            }
+            return new CsrGraph(Arrays.copyOf(names, n), new HashMap<>(ids), compacted, targets, edgeWeights, distinctEdges);
+        }
+
+        private static long pack(int target, int edge) {
+            return ((long) target << 32) | (edge & 0xffffffffL);
+        }
+    }
+}
@@ -0,0 +1,587 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+// Parallel CSV reader for holdings, goals and price ticks. The file is cut
+// into byte ranges that start on line boundaries; each range is mapped and
+// parsed on its own ForkJoinPool task straight from the bytes, with numbers
+// decoded in place rather than through String.split and Double.parseDouble.
+// The partial results are concatenated back in file order as the tasks join.
+//
+// Rows are classified by shape, so one file may mix all three kinds and
+// header or blank lines are skipped:
+//   holding  name,type,price,quantity[,value]   (ReportsPanel's export)
+//   tick     symbol,epochMillis,price
+//   goal     name,targetValue,deadline           (deadline is not a number)
+public class CsvImporter {
+    private static final int MIN_CHUNK = 1 << 20;
+    private static final int MAX_CHUNK = 1 << 28;
+    private static final int MAX_FIELDS = 6;
+    private static final int WINDOW = 1 << 20;
+    private static final double[] POW10 = new double[23];
+
+    static {
+        POW10[0] = 1;
+        for (int i = 1; i < POW10.length; i++) {
+            POW10[i] = POW10[i - 1] * 10;
+        }
+    }
+
+    public static Result read(Path path) throws IOException {
+        return read(path, ForkJoinPool.commonPool());
+    }
+
+    public static Result read(Path path, ForkJoinPool pool) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long[] bounds = split(channel, pool.getParallelism());
+            return pool.invoke(new ParseTask(channel, bounds, 0, bounds.length - 1));
+        }
+    }
+
+    // Chunk boundaries: roughly equal ranges, each moved forward to just
+    // after the next newline so that no line straddles two chunks.
+    static long[] split(FileChannel channel, int parallelism) throws IOException {
+        long size = channel.size();
+        long chunks = Math.max(1, Math.min(size / MIN_CHUNK, parallelism * 4L));
+        chunks = Math.max(chunks, (size + MAX_CHUNK - 1) / MAX_CHUNK);
+        long[] bounds = new long[(int) chunks + 1];
+        int count = 1;
+        ByteBuffer probe = ByteBuffer.allocate(4096);
+        for (int c = 1; c < chunks; c++) {
+            long at = Math.max(size * c / chunks, bounds[count - 1]);
+            long next = nextLineStart(channel, at, size, probe);
+            if (next > bounds[count - 1] && next < size) {
+                bounds[count++] = next;
+            }
+        }
+        bounds[count++] = size;
+        return Arrays.copyOf(bounds, count);
+    }
+
+    private static long nextLineStart(FileChannel channel, long from, long size, ByteBuffer probe) throws IOException {
+        long position = from;
+        while (position < size) {
+            probe.clear();
+            int read = channel.read(probe, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (probe.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+        return size;
+    }
+
+    // Parses a decimal such as -12.5, 3e-4 or 100 from bytes [from, to).
+    // Returns NaN if the field is not a plain number.
+    static double parseDouble(byte[] bytes, int from, int to) {
+        from = skipQuote(bytes, from, to);
+        to = trimQuote(bytes, from, to);
+        if (from >= to) {
+            return Double.NaN;
+        }
+        int i = from;
+        boolean negative = false;
+        byte b = bytes[i];
+        if (b == '-' || b == '+') {
+            negative = b == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int scale = 0;
+        boolean seenDigit = false;
+        boolean seenDot = false;
+        for (; i < to; i++) {
+            b = bytes[i];
+            if (b >= '0' && b <= '9') {
+                seenDigit = true;
+                if (digits < 18) {
+                    mantissa = mantissa * 10 + (b - '0');
+                    if (mantissa != 0) {
+                        digits++;
+                    }
+                    if (seenDot) {
+                        scale--;
+                    }
+                } else if (!seenDot) {
+                    scale++;
+                }
+            } else if (b == '.' && !seenDot) {
+                seenDot = true;
+            } else if (b == 'e' || b == 'E') {
+                break;
+            } else {
+                return Double.NaN;
+            }
+        }
+        if (!seenDigit) {
+            return Double.NaN;
+        }
+        if (i < to) {
+            i++;
+            boolean negativeExponent = false;
+            if (i < to && (bytes[i] == '-' || bytes[i] == '+')) {
+                negativeExponent = bytes[i] == '-';
+                i++;
+            }
+            if (i == to) {
+                return Double.NaN;
+            }
+            int exponent = 0;
+            for (; i < to; i++) {
+                b = bytes[i];
+                if (b < '0' || b > '9') {
+                    return Double.NaN;
+                }
+                exponent = Math.min(exponent * 10 + (b - '0'), 10000);
+            }
+            scale += negativeExponent ? -exponent : exponent;
+        }
+        double value;
+        if (digits > 15 || scale < -22 || scale > 22) {
+            // Outside the exactly representable fast path; let the JDK round it.
+            value = Math.abs(Double.parseDouble(new String(bytes, from, to - from, StandardCharsets.ISO_8859_1)));
+        } else {
+            value = scale < 0 ? mantissa / POW10[-scale] : mantissa * POW10[scale];
+        }
+        return negative ? -value : value;
+    }
+
+    // Parses an unsigned or negative whole number; Long.MIN_VALUE if the
+    // field is anything else.
+    static long parseLong(byte[] bytes, int from, int to) {
+        from = skipQuote(bytes, from, to);
+        to = trimQuote(bytes, from, to);
+        if (from >= to || to - from > 19) {
+            return Long.MIN_VALUE;
+        }
+        int i = from;
+        boolean negative = bytes[i] == '-';
+        if (negative) {
+            i++;
+        }
+        if (i == to) {
+            return Long.MIN_VALUE;
+        }
+        long value = 0;
+        for (; i < to; i++) {
+            byte b = bytes[i];
+            if (b < '0' || b > '9') {
+                return Long.MIN_VALUE;
+            }
+            value = value * 10 + (b - '0');
+        }
+        return negative ? -value : value;
+    }
+
+    private static int skipQuote(byte[] bytes, int from, int to) {
+        while (from < to && bytes[from] == ' ') {
+            from++;
+        }
+        return from < to && bytes[from] == '"' ? from + 1 : from;
+    }
+
+    private static int trimQuote(byte[] bytes, int from, int to) {
+        while (to > from && (bytes[to - 1] == ' ' || bytes[to - 1] == '\r')) {
+            to--;
+        }
+        return to > from && bytes[to - 1] == '"' ? to - 1 : to;
+    }
+
+    @SuppressWarnings("serial")
+    private static class ParseTask extends RecursiveTask<Result> {
+        private final FileChannel channel;
+        private final long[] bounds;
+        private final int from;
+        private final int to;
+
+        ParseTask(FileChannel channel, long[] bounds, int from, int to) {
+            this.channel = channel;
+            this.bounds = bounds;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Result compute() {
+            if (to - from == 1) {
+                try {
+                    long start = bounds[from];
+                    long length = bounds[to] - start;
+                    Result result = new Result();
+                    if (length > 0) {
+                        MappedByteBuffer chunk = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+                        result.parse(chunk);
+                    }
+                    return result;
+                } catch (IOException e) {
+                    throw new java.io.UncheckedIOException(e);
+                }
+            }
+            int mid = (from + to) >>> 1;
+            ParseTask right = new ParseTask(channel, bounds, mid, to);
+            right.fork();
+            Result left = new ParseTask(channel, bounds, from, mid).compute();
+            left.append(right.join());
+            return left;
+        }
+    }
+
+    // Parsed rows in file order. Tick symbols are ids into tickSymbols so a
+    // long tick dump allocates one String per distinct symbol, not per row.
+    public static class Result {
+        private String[] holdingNames = new String[16];
+        private String[] holdingTypes = new String[16];
+        private double[] holdingPrices = new double[16];
+        private double[] holdingQuantities = new double[16];
+        private int holdingCount;
+
+        private String[] goalNames = new String[4];
+        private double[] goalTargets = new double[4];
+        private String[] goalDeadlines = new String[4];
+        private int goalCount;
+
+        private final List<String> tickSymbols = new java.util.ArrayList<>();
+        private final Map<String, Integer> tickSymbolIds = new HashMap<>();
+        private int[] tickSymbol = new int[16];
+        private long[] tickTimes = new long[16];
+        private double[] tickPrices = new double[16];
+        private int tickCount;
+
+        private long skippedRows;
+
+        // Open-addressed index from symbol bytes to tick symbol id, so a
+        // repeated symbol is matched without building a String.
+        private int[] slots = emptySlots(64);
+        private byte[][] slotBytes = new byte[64][];
+
+        public int holdingCount() {
+            return holdingCount;
+        }
+
+        public String holdingName(int i) {
+            return holdingNames[i];
+        }
+
+        public String holdingType(int i) {
+            return holdingTypes[i];
+        }
+
+        public double holdingPrice(int i) {
+            return holdingPrices[i];
+        }
+
+        public double holdingQuantity(int i) {
+            return holdingQuantities[i];
+        }
+
+        public int goalCount() {
+            return goalCount;
+        }
+
+        public String goalName(int i) {
+            return goalNames[i];
+        }
+
+        public double goalTarget(int i) {
+            return goalTargets[i];
+        }
+
+        public String goalDeadline(int i) {
+            return goalDeadlines[i];
+        }
+
+        public int tickCount() {
+            return tickCount;
+        }
+
+        public String tickSymbol(int i) {
+            return tickSymbols.get(tickSymbol[i]);
+        }
+
+        public long tickTime(int i) {
+            return tickTimes[i];
+        }
+
+        public double tickPrice(int i) {
+            return tickPrices[i];
+        }
+
+        public long skippedRows() {
+            return skippedRows;
+        }
+
+        // Tick rows ordered by symbol, then time, keeping file order for ties.
+        public int[] tickOrder() {
+            double[] symbols = new double[tickCount];
+            double[] times = new double[tickCount];
+            for (int i = 0; i < tickCount; i++) {
+                symbols[i] = tickSymbol[i];
+                times[i] = tickTimes[i];
+            }
+            return SortingUtil.sortedIndices(symbols, times);
+        }
+
+        // Copies the chunk through a reusable window and parses the complete
+        // lines in it; a line cut by the window edge is carried to the next fill.
+        void parse(ByteBuffer chunk) {
+            byte[] window = new byte[WINDOW];
+            int[] starts = new int[MAX_FIELDS + 1];
+            int filled = 0;
+            while (chunk.hasRemaining() || filled > 0) {
+                int copy = Math.min(window.length - filled, chunk.remaining());
+                chunk.get(window, filled, copy);
+                filled += copy;
+                int end = filled;
+                if (chunk.hasRemaining()) {
+                    while (end > 0 && window[end - 1] != '\n') {
+                        end--;
+                    }
+                    if (end == 0) {
+                        window = Arrays.copyOf(window, window.length * 2);
+                        continue;
+                    }
+                }
+                parseLines(window, end, starts);
+                System.arraycopy(window, end, window, 0, filled - end);
+                filled -= end;
+            }
+        }
+
+        private void parseLines(byte[] bytes, int limit, int[] starts) {
+            int lineStart = 0;
+            while (lineStart < limit) {
+                int fields = 0;
+                starts[fields++] = lineStart;
+                int i = lineStart;
+                for (; i < limit; i++) {
+                    byte b = bytes[i];
+                    if (b == '\n') {
+                        break;
+                    }
+                    if (b == ',') {
+                        if (fields <= MAX_FIELDS) {
+                            starts[fields] = i + 1;
+                        }
+                        fields++;
+                    }
+                }
+                int lineEnd = i;
+                if (fields <= MAX_FIELDS) {
+                    starts[fields] = lineEnd + 1;
+                    parseRow(bytes, starts, fields);
+                } else {
+                    skippedRows++;
+                }
+                lineStart = lineEnd + 1;
+            }
+        }
+
+        // starts[k] is where field k begins; field k ends at starts[k + 1] - 1.
+        private void parseRow(byte[] chunk, int[] starts, int fields) {
+            if (fields == 4 || fields == 5) {
+                double price = parseDouble(chunk, starts[2], starts[3] - 1);
+                double quantity = parseDouble(chunk, starts[3], starts[4] - 1);
+                if (!Double.isNaN(price) && !Double.isNaN(quantity)) {
+                    addHolding(text(chunk, starts[0], starts[1] - 1), text(chunk, starts[1], starts[2] - 1), price, quantity);
+                    return;
+                }
+            } else if (fields == 3) {
+                double third = parseDouble(chunk, starts[2], starts[3] - 1);
+                if (!Double.isNaN(third)) {
+                    long time = parseLong(chunk, starts[1], starts[2] - 1);
+                    if (time != Long.MIN_VALUE) {
+                        addTick(symbolId(chunk, starts[0], starts[1] - 1), time, third);
+                        return;
+                    }
+                } else {
+                    double target = parseDouble(chunk, starts[1], starts[2] - 1);
+                    if (!Double.isNaN(target)) {
+                        addGoal(text(chunk, starts[0], starts[1] - 1), target,
+                                text(chunk, starts[2], starts[3] - 1));
+                        return;
+                    }
+                }
+            }
+            if (starts[fields] - 1 > starts[0]) {
+                skippedRows++;
+            }
+        }
+
+        private static String text(byte[] chunk, int from, int to) {
+            from = skipQuote(chunk, from, to);
+            to = trimQuote(chunk, from, to);
+            return new String(chunk, from, Math.max(0, to - from), StandardCharsets.UTF_8);
+        }
+
+        private int symbolId(byte[] chunk, int from, int to) {
+            from = skipQuote(chunk, from, to);
+            to = trimQuote(chunk, from, to);
+            int hash = 0x811c9dc5;
+            for (int k = from; k < to; k++) {
+                hash = (hash ^ chunk[k]) * 0x01000193;
+            }
+            int mask = slots.length - 1;
+            for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+                int id = slots[slot];
+                if (id < 0) {
+                    byte[] bytes = Arrays.copyOfRange(chunk, from, to);
+                    id = internTick(new String(bytes, StandardCharsets.UTF_8));
+                    slots[slot] = id;
+                    slotBytes[slot] = bytes;
+                    if (tickSymbols.size() * 2 > slots.length) {
+                        rehash();
+                    }
+                    return id;
+                }
+                if (Arrays.equals(slotBytes[slot], 0, slotBytes[slot].length, chunk, from, to)) {
+                    return id;
+                }
+            }
+        }
+
+        private void rehash() {
+            int[] oldSlots = slots;
+            byte[][] oldBytes = slotBytes;
+            slots = emptySlots(oldSlots.length * 2);
+            slotBytes = new byte[slots.length][];
+            int mask = slots.length - 1;
+            for (int i = 0; i < oldSlots.length; i++) {
+                if (oldSlots[i] < 0) {
+                    continue;
+                }
+                byte[] bytes = oldBytes[i];
+                int hash = 0x811c9dc5;
+                for (byte b : bytes) {
+                    hash = (hash ^ b) * 0x01000193;
+                }
+                int slot = hash & mask;
+                while (slots[slot] >= 0) {
+                    slot = (slot + 1) & mask;
+                }
+                slots[slot] = oldSlots[i];
+                slotBytes[slot] = bytes;
+            }
+        }
+
+        private static int[] emptySlots(int size) {
+            int[] slots = new int[size];
+            Arrays.fill(slots, -1);
+            return slots;
+        }
+
+        private int internTick(String symbol) {
+            Integer id = tickSymbolIds.get(symbol);
+            if (id == null) {
+                id = tickSymbols.size();
+                tickSymbols.add(symbol);
+                tickSymbolIds.put(symbol, id);
+            }
+            return id;
+        }
+
+        private void addHolding(String name, String type, double price, double quantity) {
+            if (holdingCount == holdingNames.length) {
+                int size = holdingCount * 2;
+                holdingNames = Arrays.copyOf(holdingNames, size);
+                holdingTypes = Arrays.copyOf(holdingTypes, size);
+                holdingPrices = Arrays.copyOf(holdingPrices, size);
+                holdingQuantities = Arrays.copyOf(holdingQuantities, size);
+            }
+            holdingNames[holdingCount] = name;
+            holdingTypes[holdingCount] = type;
+            holdingPrices[holdingCount] = price;
+            holdingQuantities[holdingCount] = quantity;
+            holdingCount++;
+        }
+
+        private void addGoal(String name, double target, String deadline) {
+            if (goalCount == goalNames.length) {
+                growGoals(goalCount * 2);
+            }
+            goalNames[goalCount] = name;
+            goalTargets[goalCount] = target;
+            goalDeadlines[goalCount] = deadline;
+            goalCount++;
+        }
+
+        private void growGoals(int size) {
+            goalNames = Arrays.copyOf(goalNames, size);
+            goalTargets = Arrays.copyOf(goalTargets, size);
+            goalDeadlines = Arrays.copyOf(goalDeadlines, size);
+        }
+
+        private void addTick(int symbol, long time, double price) {
+            if (tickCount == tickSymbol.length) {
+                growTicks(tickCount * 2);
+            }
+            tickSymbol[tickCount] = symbol;
+            tickTimes[tickCount] = time;
+            tickPrices[tickCount] = price;
+            tickCount++;
+        }
+
+        private void growTicks(int size) {
+            tickSymbol = Arrays.copyOf(tickSymbol, size);
+            tickTimes = Arrays.copyOf(tickTimes, size);
+            tickPrices = Arrays.copyOf(tickPrices, size);
+        }
+
+        // Appends the rows of a result that follows this one in the file.
+        void append(Result next) {
+            int holdings = holdingCount + next.holdingCount;
+            if (holdings > holdingNames.length) {
+                holdingNames = Arrays.copyOf(holdingNames, holdings);
+                holdingTypes = Arrays.copyOf(holdingTypes, holdings);
+                holdingPrices = Arrays.copyOf(holdingPrices, holdings);
+                holdingQuantities = Arrays.copyOf(holdingQuantities, holdings);
+            }
+            System.arraycopy(next.holdingNames, 0, holdingNames, holdingCount, next.holdingCount);
+            System.arraycopy(next.holdingTypes, 0, holdingTypes, holdingCount, next.holdingCount);
+            System.arraycopy(next.holdingPrices, 0, holdingPrices, holdingCount, next.holdingCount);
+            System.arraycopy(next.holdingQuantities, 0, holdingQuantities, holdingCount, next.holdingCount);
+            holdingCount = holdings;
+
+            int goals = goalCount + next.goalCount;
+            if (goals > goalNames.length) {
+                growGoals(goals);
+            }
+            System.arraycopy(next.goalNames, 0, goalNames, goalCount, next.goalCount);
+            System.arraycopy(next.goalTargets, 0, goalTargets, goalCount, next.goalCount);
+            System.arraycopy(next.goalDeadlines, 0, goalDeadlines, goalCount, next.goalCount);
+            goalCount = goals;
+
+            int[] remap = new int[next.tickSymbols.size()];
+            for (int s = 0; s < remap.length; s++) {
+                remap[s] = internTick(next.tickSymbols.get(s));
+            }
+            int ticks = tickCount + next.tickCount;
+            if (ticks > tickSymbol.length) {
+                growTicks(ticks);
+            }
+            for (int t = 0; t < next.tickCount; t++) {
+                tickSymbol[tickCount + t] = remap[next.tickSymbol[t]];
+            }
+            System.arraycopy(next.tickTimes, 0, tickTimes, tickCount, next.tickCount);
+            System.arraycopy(next.tickPrices, 0, tickPrices, tickCount, next.tickCount);
+            tickCount = ticks;
+
+            skippedRows += next.skippedRows;
+        }
+    }
+}
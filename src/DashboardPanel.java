@@ -1,9 +1,6 @@
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
-import java.net.URL;
 import java.io.IOException;
 import java.util.Date;
+import java.util.concurrent.CompletableFuture;
 import javafx.animation.TranslateTransition;
 import javafx.animation.Timeline;
 import javafx.animation.KeyFrame;
@@ -15,10 +12,10 @@ import javafx.scene.layout.*;
 import javafx.scene.paint.Color;
 import javafx.scene.text.Font;
 import javafx.util.Duration;
-import com.google.gson.Gson;
 
 public class DashboardPanel {
     private final PortfolioManager portfolio;
+    private final TickEventBus ticks;
     private final Runnable updateCallback;
     private final BorderPane pane;
     
@@ -28,8 +25,6 @@ public class DashboardPanel {
     
     private Label tickerLabel;
     
-    private static final String FINNHUB_API_KEY = "cvstuepr01qhup0t2av0cvstuepr01qhup0t2avg";
-    
     private static final String[] TICKER_SYMBOLS = { 
         "AAPL", "GOOG", "MSFT", "AMZN", "META", "TSLA", "NFLX" 
     };
@@ -38,8 +33,10 @@ public class DashboardPanel {
     
     private TranslateTransition tickerTransition = null;
     
-    public DashboardPanel(PortfolioManager portfolio, Runnable updateCallback) {
+    // Ticker quotes are also published to the bus as live ticks.
+    public DashboardPanel(PortfolioManager portfolio, TickEventBus ticks, Runnable updateCallback) {
         this.portfolio = portfolio;
+        this.ticks = ticks;
         this.updateCallback = updateCallback;
         this.pane = createDashboardPane();
         updateTickerPriceAndAppend();
@@ -127,95 +124,89 @@ public class DashboardPanel {
         tickerTransition.play();
     }
     
+    // The ticker symbols are looked up in parallel, through the quote
+    // cache; the line is appended once every answer (or failure) is in.
+    // Only answers fetched for this lookup go on the bus, stamped with when
+    // they arrived; a cached quote may be minutes old.
     private void updateTickerPriceAndAppend() {
-        new Thread(() -> {
+        long asked = System.currentTimeMillis();
+        CompletableFuture<?>[] fetches = new CompletableFuture<?>[TICKER_SYMBOLS.length];
+        FinnhubClient.Quote[] quotes = new FinnhubClient.Quote[TICKER_SYMBOLS.length];
+        for (int i = 0; i < TICKER_SYMBOLS.length; i++) {
+            String symbol = TICKER_SYMBOLS[i];
+            int index = i;
+            fetches[i] = QuoteCache.shared().get(symbol)
+                .handle((quote, error) -> {
+                    if (error != null) {
+                        error.printStackTrace();
+                    } else if (quote != null) {
+                        quotes[index] = quote;
+                    }
+                    if (quote != null && quote.c > 0 && quote.fetchedAt >= asked) {
+                        ticks.publish(symbol, quote.c, quote.fetchedAt, TickEventBus.SOURCE_LIVE);
+                    }
+                    return null;
+                });
+        }
+        CompletableFuture.allOf(fetches).thenRunAsync(() -> {
             StringBuilder newData = new StringBuilder();
-            for (String symbol : TICKER_SYMBOLS) {
-                try {
-                    QuoteResponse quote = fetchQuote(symbol);
-                    newData.append(symbol)
-                           .append(": ")
-                           .append(String.format("%.2f", quote.c))
+            for (int i = 0; i < TICKER_SYMBOLS.length; i++) {
+                newData.append(TICKER_SYMBOLS[i]);
+                if (quotes[i] == null) {
+                    newData.append(": N/A    ");
+                } else {
+                    newData.append(": ")
+                           .append(String.format("%.2f", quotes[i].c))
                            .append("    ");
-                } catch (Exception ex) {
-                    ex.printStackTrace();
-                    newData.append(symbol)
-                           .append(": N/A    ");
                 }
             }
-            Platform.runLater(() -> {
-                String currentText = tickerLabel.getText();
-                if (currentText.startsWith("Live Prices: ")) {
-                    currentText = currentText.substring(13);
-                }
-                String updatedText = currentText + " " + newData.toString();
-                if (updatedText.length() > MAX_TICKER_LENGTH) {
-                    updatedText = newData.toString();
-                }
-                tickerLabel.setText("Live Prices: " + updatedText);
-                startTickerScroll((Pane)tickerLabel.getParent());
-            });
-        }).start();
-    }
-    
-    private QuoteResponse fetchQuote(String symbol) throws Exception {
-        String urlStr = "https://finnhub.io/api/v1/quote?symbol=" + symbol + "&token=" + FINNHUB_API_KEY;
-        URL url = new URL(urlStr);
-        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-        conn.setRequestMethod("GET");
-        
-        int status = conn.getResponseCode();
-        if (status != 200) {
-            throw new RuntimeException("Finnhub request failed, HTTP status: " + status);
-        }
-        
-        BufferedReader in = new BufferedReader(new InputStreamReader(conn.getInputStream()));
-        StringBuilder response = new StringBuilder();
-        String line;
-        while ((line = in.readLine()) != null) {
-            response.append(line);
-        }
-        in.close();
-        
-        Gson gson = new Gson();
-        return gson.fromJson(response.toString(), QuoteResponse.class);
-    }
-    
-    private static class QuoteResponse {
-        public double c;
-        public double d;
-        public double dp;
-        public double h;
-        public double l;
-        public double o;
-        public double pc;
+            String currentText = tickerLabel.getText();
+            if (currentText.startsWith("Live Prices: ")) {
+                currentText = currentText.substring(13);
+            }
+            String updatedText = currentText + " " + newData.toString();
+            if (updatedText.length() > MAX_TICKER_LENGTH) {
+                updatedText = newData.toString();
+            }
+            tickerLabel.setText("Live Prices: " + updatedText);
+            startTickerScroll((Pane)tickerLabel.getParent());
+        }, Platform::runLater);
     }
     
+    // Works from one snapshot per holding, so the total, the list and the
+    // chart agree even while the simulator is ticking.
     public void updateDashboard() {
-        double totalValue = portfolio.getTotalValue();
         ListADT<Asset> assets = portfolio.getAssets();
-        StringBuilder summary = new StringBuilder();
-        summary.append("Total Portfolio Value: $").append(String.format("%.2f", totalValue)).append("\n");
-        summary.append("Number of Assets: ").append(assets.size()).append("\n");
+        Asset.Snapshot[] states = new Asset.Snapshot[assets.size()];
+        double totalValue = 0;
         double totalReturn = 0;
-        for (int i = 0; i < assets.size(); i++) {
-            totalReturn += assets.get(i).getReturn();
+        for (int i = 0; i < states.length; i++) {
+            states[i] = assets.get(i).snapshot();
+            totalValue += states[i].value;
+            totalReturn += states[i].returnPercent;
         }
-        double avgReturn = assets.size() > 0 ? totalReturn / assets.size() : 0;
+        StringBuilder summary = new StringBuilder();
+        summary.append("Total Portfolio Value: $").append(String.format("%.2f", totalValue)).append("\n");
+        summary.append("Number of Assets: ").append(states.length).append("\n");
+        double avgReturn = states.length > 0 ? totalReturn / states.length : 0;
         summary.append("Average Return: ").append(String.format("%.2f%%", avgReturn)).append("\n");
         summary.append("\nAssets:\n");
-        for (int i = 0; i < assets.size(); i++) {
-            summary.append(assets.get(i).toString()).append("\n");
+        for (Asset.Snapshot state : states) {
+            summary.append(state.name).append(" (").append(state.type).append(") - ").append(state.quantity)
+                   .append(" at $").append(String.format("%.2f", state.price)).append("\n");
         }
         summaryArea.setText(summary.toString());
         
         allocationChart.getData().clear();
-        for (int i = 0; i < assets.size(); i++) {
-            Asset asset = assets.get(i);
+        for (Asset.Snapshot state : states) {
             allocationChart.getData().add(new PieChart.Data(
-                asset.getName() + " ($" + String.format("%.2f", asset.getValue()) + ")", asset.getValue()));
+                state.name + " ($" + String.format("%.2f", state.value) + ")", state.value));
         }
         
+        if (!portfolio.goalsLoaded()) {
+            goalProgressLabel.setText("Goal Progress: loading...");
+            return;
+        }
         ListADT<Goal> goals = portfolio.getGoals();
         StringBuilder goalText = new StringBuilder("Goal Progress:\n");
         for (int i = 0; i < goals.size(); i++) {
@@ -0,0 +1,60 @@
+// Streaming drawdown: each price is compared with the running peak, so the
+// current and maximum drawdown are maintained in O(1) per sample.
+public class DrawdownTracker {
+    private boolean started;
+    private double peak;
+    private long peakTime;
+    private double currentDrawdown;
+    private double maxDrawdown;
+    private long maxDrawdownPeakTime;
+    private long maxDrawdownTroughTime;
+
+    public void update(double price, long timestamp) {
+        if (!started || price > peak) {
+            peak = price;
+            peakTime = timestamp;
+            started = true;
+        }
+        currentDrawdown = peak > 0 ? (peak - price) / peak * 100 : 0;
+        if (currentDrawdown > maxDrawdown) {
+            maxDrawdown = currentDrawdown;
+            maxDrawdownPeakTime = peakTime;
+            maxDrawdownTroughTime = timestamp;
+        }
+    }
+
+    public void reset() {
+        started = false;
+        peak = 0;
+        peakTime = 0;
+        currentDrawdown = 0;
+        maxDrawdown = 0;
+        maxDrawdownPeakTime = 0;
+        maxDrawdownTroughTime = 0;
+    }
+
+    public double getPeak() {
+        return peak;
+    }
+
+    public long getPeakTime() {
+        return peakTime;
+    }
+
+    // Percent below the running peak.
+    public double getCurrentDrawdown() {
+        return currentDrawdown;
+    }
+
+    public double getMaxDrawdown() {
+        return maxDrawdown;
+    }
+
+    public long getMaxDrawdownPeakTime() {
+        return maxDrawdownPeakTime;
+    }
+
+    public long getMaxDrawdownTroughTime() {
+        return maxDrawdownTroughTime;
+    }
+}
@@ -0,0 +1,195 @@
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+// The one way the app talks to Finnhub. A single HttpClient is shared, so
+// connections are kept alive and reused (and multiplexed when the server
+// speaks HTTP/2). Requests are sent with sendAsync and each carries its own
+// deadline; bodies are read with a streaming JsonReader on the I/O pool, so
+// no response is ever held as one string. Every future is counted by the
+// IoExecutor until it completes.
+//
+// ppms.finnhub.baseUrl points the client elsewhere, e.g. at a
+// FinnhubStubServer; ppms.finnhub.token overrides the API key and
+// ppms.http.timeoutMs the default deadline.
+public class FinnhubClient {
+    public static final String DEFAULT_BASE_URL = System.getProperty("ppms.finnhub.baseUrl", "https://finnhub.io/api/v1");
+    public static final Duration DEFAULT_TIMEOUT = Duration.ofMillis(Integer.getInteger("ppms.http.timeoutMs", 10000));
+    private static final String DEFAULT_TOKEN =
+            System.getProperty("ppms.finnhub.token", "cvstuepr01qhup0t2av0cvstuepr01qhup0t2avg");
+
+    private static final FinnhubClient SHARED =
+            new FinnhubClient(DEFAULT_BASE_URL, DEFAULT_TOKEN, DEFAULT_TIMEOUT, IoExecutor.shared());
+
+    private final String baseUrl;
+    private final String token;
+    private final Duration timeout;
+    private final IoExecutor io;
+    private final HttpClient http;
+
+    public FinnhubClient(String baseUrl, String token, Duration timeout, IoExecutor io) {
+        this.baseUrl = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+        this.token = token;
+        this.timeout = timeout;
+        this.io = io;
+        // The client keeps its own executor for delivering response bytes;
+        // parsing blocks on them, so it runs on the I/O pool instead.
+        this.http = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(timeout)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .build();
+    }
+
+    public static FinnhubClient shared() {
+        return SHARED;
+    }
+
+    public String getBaseUrl() {
+        return baseUrl;
+    }
+
+    public CompletableFuture<Quote> quote(String symbol) {
+        return quote(symbol, new Quote(), timeout);
+    }
+
+    // Fills the given Quote rather than allocating one, so a caller that
+    // polls the same symbols can keep one per symbol. It must not be read
+    // or passed to another call until the future completes.
+    public CompletableFuture<Quote> quote(String symbol, Quote into, Duration deadline) {
+        return get("/quote?symbol=" + encode(symbol), deadline, reader -> {
+            into.readFrom(reader);
+            into.fetchedAt = System.currentTimeMillis();
+            return into;
+        });
+    }
+
+    // The first `limit` articles about the symbol between the two dates
+    // (yyyy-MM-dd); the rest of the response is skipped, not parsed.
+    public CompletableFuture<List<NewsArticle>> companyNews(String symbol, String from, String to, int limit) {
+        String query = "/company-news?symbol=" + encode(symbol) + "&from=" + encode(from) + "&to=" + encode(to);
+        return get(query, timeout, reader -> {
+            List<NewsArticle> articles = new java.util.ArrayList<>();
+            reader.beginArray();
+            while (reader.hasNext()) {
+                if (articles.size() < limit) {
+                    NewsArticle article = new NewsArticle();
+                    article.readFrom(reader);
+                    articles.add(article);
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endArray();
+            return articles;
+        });
+    }
+
+    private interface BodyParser<T> {
+        T parse(JsonReader reader) throws IOException;
+    }
+
+    private <T> CompletableFuture<T> get(String pathAndQuery, Duration deadline, BodyParser<T> parser) {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + pathAndQuery + "&token=" + encode(token)))
+                .timeout(deadline)
+                .header("Accept", "application/json")
+                .GET()
+                .build();
+        return io.track(http.sendAsync(request, HttpResponse.BodyHandlers.ofInputStream())
+                .thenApplyAsync(response -> {
+                    try (InputStream body = response.body()) {
+                        if (response.statusCode() != 200) {
+                            throw new IOException("Finnhub request failed, HTTP status: " + response.statusCode());
+                        }
+                        JsonReader reader = new JsonReader(new InputStreamReader(body, StandardCharsets.UTF_8));
+                        if (reader.peek() == JsonToken.NULL) {
+                            return null;
+                        }
+                        return parser.parse(reader);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }, io));
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+
+    // Fields as Finnhub names them: current, change, percent change, high,
+    // low, open and previous close. fetchedAt is when the answer arrived,
+    // which for a cached quote can be minutes ago.
+    public static class Quote {
+        public double c;
+        public double d;
+        public double dp;
+        public double h;
+        public double l;
+        public double o;
+        public double pc;
+        public long fetchedAt;
+
+        void readFrom(JsonReader reader) throws IOException {
+            c = d = dp = h = l = o = pc = 0;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (reader.peek() == JsonToken.NULL) {
+                    reader.nextNull();
+                    continue;
+                }
+                switch (name) {
+                    case "c": c = reader.nextDouble(); break;
+                    case "d": d = reader.nextDouble(); break;
+                    case "dp": dp = reader.nextDouble(); break;
+                    case "h": h = reader.nextDouble(); break;
+                    case "l": l = reader.nextDouble(); break;
+                    case "o": o = reader.nextDouble(); break;
+                    case "pc": pc = reader.nextDouble(); break;
+                    default: reader.skipValue();
+                }
+            }
+            reader.endObject();
+        }
+    }
+
+    public static class NewsArticle {
+        public long datetime;
+        public String headline;
+        public String source;
+        public String summary;
+        public String url;
+
+        void readFrom(JsonReader reader) throws IOException {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (reader.peek() == JsonToken.NULL) {
+                    reader.nextNull();
+                    continue;
+                }
+                switch (name) {
+                    case "datetime": datetime = reader.nextLong(); break;
+                    case "headline": headline = reader.nextString(); break;
+                    case "source": source = reader.nextString(); break;
+                    case "summary": summary = reader.nextString(); break;
+                    case "url": url = reader.nextString(); break;
+                    default: reader.skipValue();
+                }
+            }
+            reader.endObject();
+        }
+    }
+}
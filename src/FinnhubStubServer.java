@@ -0,0 +1,243 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Local stand-in for the Finnhub API, for tests and benchmarks. It answers
+// /quote and /company-news from recorded responses, one file per endpoint
+// and symbol: <dir>/quote/AAPL.json, <dir>/company-news/AAPL.json. A
+// symbol without a recording gets <endpoint>/default.json if there is one,
+// otherwise a 404. Every answer is held back by the configured latency
+// plus up to the configured jitter, on its own thread, so slow answers do
+// not queue behind each other.
+//
+// It only speaks HTTP/1.1; FinnhubClient falls back to that on its own.
+// Point the app at it with -Dppms.finnhub.baseUrl=http://localhost:<port>.
+public class FinnhubStubServer implements AutoCloseable {
+    static {
+        // Without this the JDK server leaves Nagle on, and every answer on
+        // a kept-alive connection waits out the client's delayed ACK.
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+    }
+
+    private final Path recordings;
+    private final HttpServer server;
+    private final ExecutorService handlers;
+    private final AtomicLong served = new AtomicLong();
+    private volatile long latencyMillis;
+    private volatile long jitterMillis;
+
+    public FinnhubStubServer(Path recordings, int port, long latencyMillis, long jitterMillis) throws IOException {
+        this.recordings = recordings;
+        setLatency(latencyMillis, jitterMillis);
+        AtomicInteger count = new AtomicInteger();
+        this.handlers = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "finnhub-stub-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.server = HttpServer.create(new InetSocketAddress("localhost", port), 0);
+        server.createContext("/quote", exchange -> respond(exchange, "quote"));
+        server.createContext("/company-news", exchange -> respond(exchange, "company-news"));
+        server.setExecutor(handlers);
+        server.start();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    public String getBaseUrl() {
+        return "http://localhost:" + getPort();
+    }
+
+    public long getServed() {
+        return served.get();
+    }
+
+    // May be changed while requests are being served.
+    public void setLatency(long latencyMillis, long jitterMillis) {
+        if (latencyMillis < 0 || jitterMillis < 0) throw new IllegalArgumentException("Latency must not be negative");
+        this.latencyMillis = latencyMillis;
+        this.jitterMillis = jitterMillis;
+    }
+
+    private void respond(HttpExchange exchange, String endpoint) throws IOException {
+        try {
+            String symbol = queryParameter(exchange.getRequestURI(), "symbol");
+            Path file = recording(endpoint, symbol);
+            long delay = latencyMillis + (jitterMillis > 0 ? ThreadLocalRandom.current().nextLong(jitterMillis + 1) : 0);
+            if (delay > 0) {
+                Thread.sleep(delay);
+            }
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            if (file == null) {
+                byte[] body = ("{\"error\":\"No recording for " + endpoint + " " + symbol + "\"}")
+                        .getBytes(StandardCharsets.UTF_8);
+                exchange.sendResponseHeaders(404, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+                return;
+            }
+            exchange.sendResponseHeaders(200, Files.size(file));
+            try (OutputStream out = exchange.getResponseBody()) {
+                Files.copy(file, out);
+            }
+            served.incrementAndGet();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private Path recording(String endpoint, String symbol) {
+        if (symbol != null && symbol.matches("[A-Za-z0-9.:_-]+")) {
+            Path file = recordings.resolve(endpoint).resolve(symbol.toUpperCase() + ".json");
+            if (Files.isRegularFile(file)) {
+                return file;
+            }
+        }
+        Path fallback = recordings.resolve(endpoint).resolve("default.json");
+        return Files.isRegularFile(fallback) ? fallback : null;
+    }
+
+    private static String queryParameter(URI uri, String name) {
+        String query = uri.getRawQuery();
+        if (query == null) {
+            return null;
+        }
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0 && pair.substring(0, eq).equals(name)) {
+                return URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        handlers.shutdownNow();
+    }
+
+    // Saves the live API's current quote and last two weeks of news for
+    // each symbol in the layout the server reads.
+    public static void record(Path recordings, String token, String... symbols) throws IOException, InterruptedException {
+        HttpClient http = HttpClient.newBuilder().connectTimeout(FinnhubClient.DEFAULT_TIMEOUT).build();
+        String to = java.time.LocalDate.now().toString();
+        String from = java.time.LocalDate.now().minusDays(14).toString();
+        for (String symbol : symbols) {
+            String upper = symbol.toUpperCase();
+            save(http, recordings.resolve("quote").resolve(upper + ".json"),
+                    "https://finnhub.io/api/v1/quote?symbol=" + upper + "&token=" + token);
+            save(http, recordings.resolve("company-news").resolve(upper + ".json"),
+                    "https://finnhub.io/api/v1/company-news?symbol=" + upper + "&from=" + from + "&to=" + to + "&token=" + token);
+        }
+    }
+
+    private static void save(HttpClient http, Path file, String url) throws IOException, InterruptedException {
+        Files.createDirectories(file.getParent());
+        HttpRequest request = HttpRequest.newBuilder(URI.create(url)).timeout(FinnhubClient.DEFAULT_TIMEOUT).build();
+        Path partial = file.resolveSibling(file.getFileName() + ".part");
+        HttpResponse<Path> response = http.send(request, HttpResponse.BodyHandlers.ofFile(partial));
+        if (response.statusCode() != 200) {
+            Files.deleteIfExists(partial);
+            throw new IOException("Recording " + file.getFileName() + " failed, HTTP status: " + response.statusCode());
+        }
+        Files.move(partial, file, java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+        System.out.println("Recorded " + file);
+    }
+
+    // java FinnhubStubServer <dir> [port] [latencyMs] [jitterMs]
+    //   serves the recordings until stopped
+    // java FinnhubStubServer <dir> --bench [requests] [latencyMs] [concurrency]
+    //   times that many quote requests through FinnhubClient, at most
+    //   `concurrency` at a time
+    // java FinnhubStubServer <dir> --record TOKEN SYMBOL...
+    //   records live responses into the directory
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: FinnhubStubServer <dir> [port] [latencyMs] [jitterMs]"
+                    + " | --bench [requests] [latencyMs] [concurrency]"
+                    + " | --record TOKEN SYMBOL...");
+            return;
+        }
+        Path dir = Paths.get(args[0]);
+        if (args.length > 1 && "--record".equals(args[1])) {
+            if (args.length < 4) throw new IllegalArgumentException("Expected: --record TOKEN SYMBOL...");
+            record(dir, args[2], java.util.Arrays.copyOfRange(args, 3, args.length));
+            return;
+        }
+        if (args.length > 1 && "--bench".equals(args[1])) {
+            int requests = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+            long latency = args.length > 3 ? Long.parseLong(args[3]) : 50;
+            int concurrency = args.length > 4 ? Integer.parseInt(args[4]) : 16;
+            bench(dir, requests, latency, concurrency);
+            return;
+        }
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 8089;
+        long latency = args.length > 2 ? Long.parseLong(args[2]) : 0;
+        long jitter = args.length > 3 ? Long.parseLong(args[3]) : 0;
+        FinnhubStubServer stub = new FinnhubStubServer(dir, port, latency, jitter);
+        System.out.println("Serving " + dir + " at " + stub.getBaseUrl());
+        Thread.currentThread().join();
+    }
+
+    // Each of `concurrency` chains sends its next request when the last
+    // answer arrives, so connections are reused rather than opened per call.
+    private static void bench(Path dir, int requests, long latency, int concurrency) throws Exception {
+        if (concurrency < 1) throw new IllegalArgumentException("concurrency must be positive");
+        try (FinnhubStubServer stub = new FinnhubStubServer(dir, 0, latency, 0)) {
+            IoExecutor io = new IoExecutor(IoExecutor.DEFAULT_THREADS);
+            FinnhubClient client = new FinnhubClient(stub.getBaseUrl(), "stub", FinnhubClient.DEFAULT_TIMEOUT, io);
+            client.quote("AAPL").join();
+            AtomicInteger remaining = new AtomicInteger(requests);
+            AtomicInteger failed = new AtomicInteger();
+            long started = System.nanoTime();
+            CompletableFuture<?>[] chains = new CompletableFuture<?>[concurrency];
+            for (int i = 0; i < concurrency; i++) {
+                chains[i] = chain(client, new FinnhubClient.Quote(), remaining, failed);
+            }
+            CompletableFuture.allOf(chains).join();
+            double seconds = (System.nanoTime() - started) / 1e9;
+            System.out.printf("%d quotes (%d failed), %d at a time, at %d ms latency in %.3f s: %.0f requests/s%n",
+                    requests, failed.get(), concurrency, latency, seconds, requests / seconds);
+        }
+    }
+
+    private static CompletableFuture<Void> chain(FinnhubClient client, FinnhubClient.Quote quote,
+                                                 AtomicInteger remaining, AtomicInteger failed) {
+        if (remaining.getAndDecrement() <= 0) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return client.quote("AAPL", quote, FinnhubClient.DEFAULT_TIMEOUT)
+                .handle((q, error) -> {
+                    if (error != null) {
+                        failed.incrementAndGet();
+                    }
+                    return null;
+                })
+                .thenCompose(v -> chain(client, quote, remaining, failed));
+    }
+}
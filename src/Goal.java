@@ -4,12 +4,21 @@ public class Goal {
     private String name;
     private double targetValue;
     private Date deadline;
+    // Stored ISO-8601 deadline, parsed on the first getDeadline(); most
+    // views only need the name and target.
+    private String deadlineText;
     
     public Goal(String name, double targetValue, Date deadline) {
         this.name = name;
         this.targetValue = targetValue;
         this.deadline = deadline;
     }
+
+    public Goal(String name, double targetValue, String deadlineText) {
+        this.name = name;
+        this.targetValue = targetValue;
+        this.deadlineText = deadlineText;
+    }
     
     public String getName() {
         return name;
@@ -20,6 +29,15 @@ public class Goal {
     }
     
     public Date getDeadline() {
+        if (deadline == null && deadlineText != null) {
+            try {
+                deadline = Date.from(java.time.Instant.parse(deadlineText));
+            } catch (Exception e) {
+                System.err.println("Error parsing deadline: " + e.getMessage());
+                deadline = new Date();
+            }
+            deadlineText = null;
+        }
         return deadline;
     }
     
@@ -8,13 +8,15 @@ import javafx.scene.text.Font;
 
 public class GoalsPanel {
     private final PortfolioManager portfolio;
+    private final AsyncPortfolioService service;
     private final Runnable updateCallback;
     private final VBox pane;
 
     private TableView<Goal> goalsTable;
 
-    public GoalsPanel(PortfolioManager portfolio, Runnable updateCallback) {
+    public GoalsPanel(PortfolioManager portfolio, AsyncPortfolioService service, Runnable updateCallback) {
         this.portfolio = portfolio;
+        this.service = service;
         this.updateCallback = updateCallback;
         this.pane = createGoalsPane();
     }
@@ -46,7 +48,13 @@ public class GoalsPanel {
                 Date deadline = Date.from(
                     deadlinePicker.getValue().atStartOfDay().toInstant(ZoneOffset.UTC)
                 );
-                portfolio.addGoal(name, target, deadline);
+                service.addGoal(name, target, deadline).whenComplete((v, error) -> {
+                    if (error != null) {
+                        updateCallback.run();
+                        refreshGoalsTable();
+                        showAlert("Error", "Goal " + name + " could not be saved and was removed.");
+                    }
+                });
                 updateCallback.run();
                 goalNameField.clear();
                 targetField.clear();
@@ -97,7 +105,23 @@ public class GoalsPanel {
         return mainBox;
     }
 
+    // Until the deferred goal fetch has finished, getGoals() would run it
+    // on the FX thread, so the table waits for it instead.
     private void refreshGoalsTable() {
+        if (!portfolio.goalsLoaded()) {
+            service.loadGoals().whenComplete((v, error) -> {
+                if (error != null) {
+                    showAlert("Error", "Goals could not be loaded: " + error.getMessage());
+                } else {
+                    fillGoalsTable();
+                }
+            });
+            return;
+        }
+        fillGoalsTable();
+    }
+
+    private void fillGoalsTable() {
         goalsTable.getItems().clear();
         ListADT<Goal> goals = portfolio.getGoals();
         for (int i = 0; i < goals.size(); i++) {
@@ -0,0 +1,106 @@
+import java.util.List;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.WriteModel;
+import org.bson.Document;
+
+// Copies holdings embedded in "portfolio" documents into the "holdings"
+// collection used by MongoHoldingsRepository.
+//
+//   java HoldingsMigration [--drop-embedded] [username ...]
+//
+// With no usernames every portfolio is converted. Holdings already present
+// in the collection are left alone, so the tool can be re-run safely, and a
+// user who has been writing through the new layout keeps those values.
+// --drop-embedded removes the stocks array once its holdings are copied.
+public class HoldingsMigration {
+    private static final int BATCH = 1000;
+
+    public static void main(String[] args) {
+        boolean dropEmbedded = false;
+        List<String> users = new java.util.ArrayList<>();
+        for (String arg : args) {
+            if ("--drop-embedded".equals(arg)) {
+                dropEmbedded = true;
+            } else {
+                users.add(arg);
+            }
+        }
+        try {
+            migrate(MongoDBConnection.getDatabase(), users, dropEmbedded);
+        } finally {
+            MongoDBConnection.shutdown();
+        }
+    }
+
+    public static void migrate(MongoDatabase db, List<String> users, boolean dropEmbedded) {
+        MongoHoldingsRepository.ensureIndexes(db);
+        MongoCollection<Document> portfolios = db.getCollection("portfolio");
+        MongoCollection<Document> holdings = db.getCollection(MongoHoldingsRepository.COLLECTION);
+
+        Document query = new Document("stocks", new Document("$exists", true));
+        if (!users.isEmpty()) {
+            query.append("username", new Document("$in", users));
+        }
+        int userCount = 0;
+        long inserted = 0;
+        long skipped = 0;
+        try (MongoCursor<Document> cursor = portfolios.find(query)
+                .projection(Projections.fields(Projections.include("username", "stocks"), Projections.excludeId()))
+                .batchSize(100)
+                .iterator()) {
+            while (cursor.hasNext()) {
+                Document portfolioDoc = cursor.next();
+                String username = portfolioDoc.getString("username");
+                @SuppressWarnings("unchecked")
+                List<Document> stockDocs = (List<Document>) portfolioDoc.get("stocks");
+                if (username == null || stockDocs == null) {
+                    continue;
+                }
+                List<WriteModel<Document>> models = new java.util.ArrayList<>();
+                for (Document d : stockDocs) {
+                    String symbol = d.getString("symbol");
+                    if (symbol == null) {
+                        skipped++;
+                        continue;
+                    }
+                    // $setOnInsert: an existing holdings document wins, and a
+                    // symbol listed twice in the array keeps its first entry.
+                    models.add(new UpdateOneModel<>(
+                            new Document("username", username).append("symbol", symbol),
+                            new Document("$setOnInsert", new Document("shares", d.get("shares"))
+                                    .append("value", d.get("value"))),
+                            new UpdateOptions().upsert(true)));
+                    if (models.size() == BATCH) {
+                        inserted += upsert(holdings, models);
+                    }
+                }
+                inserted += upsert(holdings, models);
+                if (dropEmbedded) {
+                    portfolios.updateOne(new Document("username", username),
+                            new Document("$unset", new Document("stocks", "")));
+                }
+                userCount++;
+            }
+        }
+        System.out.println("Migrated " + userCount + " user(s): " + inserted + " holding(s) inserted"
+                + (skipped > 0 ? ", " + skipped + " without a symbol skipped" : "")
+                + (dropEmbedded ? ", embedded arrays removed" : ""));
+    }
+
+    // Ordered, so two upserts of the same key in one batch cannot race.
+    private static int upsert(MongoCollection<Document> holdings, List<WriteModel<Document>> models) {
+        if (models.isEmpty()) {
+            return 0;
+        }
+        BulkWriteResult result = holdings.bulkWrite(models, new BulkWriteOptions().ordered(true));
+        models.clear();
+        return result.getUpserts().size();
+    }
+}
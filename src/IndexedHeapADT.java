@@ -0,0 +1,9 @@
+public interface IndexedHeapADT<T extends Comparable<T>> extends HeapADT<T> {
+    boolean update(T element);
+    void updateAll();
+    boolean remove(T element);
+    boolean contains(T element);
+    ListADT<T> top(int n);
+    int size();
+    void clear();
+}
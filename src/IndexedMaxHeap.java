@@ -0,0 +1,283 @@
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+
+// Max-heap that remembers where every element sits, so an element whose key
+// changed can be re-sifted (or removed) in O(log n) instead of rebuilding.
+public class IndexedMaxHeap<T extends Comparable<T>> implements IndexedHeapADT<T> {
+
+    private static final int DEFAULT_CAPACITY = 10;
+
+    private Object[] heap;
+    private int size;
+    private final Map<T, Integer> positions = new HashMap<>();
+    private final Comparator<? super T> comparator;
+    private final int limit;
+
+    public IndexedMaxHeap() {
+        this(Comparator.naturalOrder(), 0);
+    }
+
+    public IndexedMaxHeap(Comparator<? super T> comparator) {
+        this(comparator, 0);
+    }
+
+    // With a positive limit only the largest `limit` elements are retained.
+    public IndexedMaxHeap(Comparator<? super T> comparator, int limit) {
+        if (limit < 0) throw new IllegalArgumentException("Limit must not be negative");
+        this.comparator = comparator;
+        this.limit = limit;
+        this.heap = new Object[limit > 0 ? limit : DEFAULT_CAPACITY];
+        this.size = 0;
+    }
+
+    @Override
+    public void add(T element) {
+        if (positions.containsKey(element)) {
+            update(element);
+            return;
+        }
+        if (limit > 0 && size == limit) {
+            int smallest = smallestLeaf();
+            if (compare(element, elementAt(smallest)) <= 0) {
+                return;
+            }
+            positions.remove(elementAt(smallest));
+            place(element, smallest);
+            siftUp(smallest);
+            return;
+        }
+        if (size == heap.length) {
+            resize();
+        }
+        place(element, size);
+        size++;
+        siftUp(size - 1);
+    }
+
+    @Override
+    public T peek() {
+        if (size == 0)
+            return null;
+        return elementAt(0);
+    }
+
+    @Override
+    public T remove() {
+        if (size == 0)
+            return null;
+        T removed = elementAt(0);
+        removeAt(0);
+        return removed;
+    }
+
+    // Re-sifts an element after its key changed. Unknown elements are added.
+    @Override
+    public boolean update(T element) {
+        Integer index = positions.get(element);
+        if (index == null) {
+            add(element);
+            return false;
+        }
+        siftUp(index);
+        siftDown(positions.get(element));
+        return true;
+    }
+
+    // Restores heap order after any number of keys changed at once, in
+    // O(n). update() only repairs the one element it is given, so calling
+    // it for each changed element in turn can leave the heap invalid.
+    @Override
+    public void updateAll() {
+        for (int i = size / 2 - 1; i >= 0; i--) {
+            siftDown(i);
+        }
+    }
+
+    @Override
+    public boolean remove(T element) {
+        Integer index = positions.get(element);
+        if (index == null) {
+            return false;
+        }
+        removeAt(index);
+        return true;
+    }
+
+    @Override
+    public boolean contains(T element) {
+        return positions.containsKey(element);
+    }
+
+    // Returns the n largest elements in descending order without modifying
+    // the heap. Only the frontier below already-emitted nodes is explored, so
+    // this costs O(n log n) regardless of the heap size.
+    @Override
+    public ListADT<T> top(int n) {
+        ListADT<T> result = new ArrayListImpl<>();
+        int count = Math.min(n, size);
+        if (count <= 0) {
+            return result;
+        }
+        int[] frontier = new int[count + 1];
+        int frontierSize = 0;
+        frontier[frontierSize++] = 0;
+        while (result.size() < count) {
+            int best = frontier[0];
+            frontier[0] = frontier[--frontierSize];
+            frontierSiftDown(frontier, frontierSize, 0);
+            result.add(elementAt(best));
+            int left = 2 * best + 1;
+            int right = left + 1;
+            if (left < size) {
+                frontier[frontierSize] = left;
+                frontierSiftUp(frontier, frontierSize++);
+            }
+            if (right < size) {
+                frontier[frontierSize] = right;
+                frontierSiftUp(frontier, frontierSize++);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            heap[i] = null;
+        }
+        size = 0;
+        positions.clear();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < size; i++) {
+            sb.append(heap[i]).append(" ");
+        }
+        return sb.toString();
+    }
+
+    private void removeAt(int index) {
+        T removed = elementAt(index);
+        positions.remove(removed);
+        size--;
+        T moved = elementAt(size);
+        heap[size] = null;
+        if (index != size) {
+            place(moved, index);
+            siftUp(index);
+            siftDown(positions.get(moved));
+        }
+    }
+
+    private int smallestLeaf() {
+        int smallest = size / 2;
+        for (int i = smallest + 1; i < size; i++) {
+            if (compare(i, smallest) < 0) {
+                smallest = i;
+            }
+        }
+        return smallest;
+    }
+
+    private void resize() {
+        Object[] newHeap = new Object[heap.length * 2];
+        System.arraycopy(heap, 0, newHeap, 0, size);
+        heap = newHeap;
+    }
+
+    private void siftUp(int index) {
+        int parent = (index - 1) / 2;
+        while (index > 0 && compare(index, parent) > 0) {
+            swap(index, parent);
+            index = parent;
+            parent = (index - 1) / 2;
+        }
+    }
+
+    private void siftDown(int index) {
+        while (index < size) {
+            int left = 2 * index + 1;
+            int right = 2 * index + 2;
+            int largest = index;
+            if (left < size && compare(left, largest) > 0) {
+                largest = left;
+            }
+            if (right < size && compare(right, largest) > 0) {
+                largest = right;
+            }
+            if (largest != index) {
+                swap(index, largest);
+                index = largest;
+            } else {
+                break;
+            }
+        }
+    }
+
+    private void frontierSiftUp(int[] frontier, int index) {
+        while (index > 0) {
+            int parent = (index - 1) / 2;
+            if (compare(frontier[index], frontier[parent]) <= 0) {
+                break;
+            }
+            int tmp = frontier[index];
+            frontier[index] = frontier[parent];
+            frontier[parent] = tmp;
+            index = parent;
+        }
+    }
+
+    private void frontierSiftDown(int[] frontier, int frontierSize, int index) {
+        while (true) {
+            int left = 2 * index + 1;
+            int right = left + 1;
+            int largest = index;
+            if (left < frontierSize && compare(frontier[left], frontier[largest]) > 0) {
+                largest = left;
+            }
+            if (right < frontierSize && compare(frontier[right], frontier[largest]) > 0) {
+                largest = right;
+            }
+            if (largest == index) {
+                return;
+            }
+            int tmp = frontier[index];
+            frontier[index] = frontier[largest];
+            frontier[largest] = tmp;
+            index = largest;
+        }
+    }
+
+    private void swap(int i, int j) {
+        T a = elementAt(i);
+        T b = elementAt(j);
+        place(b, i);
+        place(a, j);
+    }
+
+    private void place(T element, int index) {
+        heap[index] = element;
+        positions.put(element, index);
+    }
+
+    private int compare(int i, int j) {
+        return comparator.compare(elementAt(i), elementAt(j));
+    }
+
+    private int compare(T a, T b) {
+        return comparator.compare(a, b);
+    }
+
+    @SuppressWarnings("unchecked")
+    private T elementAt(int index) {
+        return (T) heap[index];
+    }
+}
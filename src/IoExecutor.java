@@ -0,0 +1,116 @@
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+import java.util.function.Supplier;
+
+// Runs blocking persistence and network calls away from the JavaFX thread.
+// At most ppms.io.threads calls run at once; the rest queue. Every future
+// handed out is counted from submission until it completes, so the UI can
+// show how much I/O is outstanding.
+public class IoExecutor implements Executor {
+    public static final int DEFAULT_THREADS = Integer.getInteger("ppms.io.threads", 8);
+
+    private static final IoExecutor SHARED = new IoExecutor(DEFAULT_THREADS);
+
+    private final ThreadPoolExecutor pool;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final CopyOnWriteArrayList<IntConsumer> listeners = new CopyOnWriteArrayList<>();
+
+    public IoExecutor(int threads) {
+        if (threads < 1) throw new IllegalArgumentException("threads must be positive");
+        AtomicInteger count = new AtomicInteger();
+        this.pool = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), r -> {
+                    Thread thread = new Thread(r, "ppms-io-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        pool.allowCoreThreadTimeOut(true);
+    }
+
+    public static IoExecutor shared() {
+        return SHARED;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        pool.execute(command);
+    }
+
+    // Runs the call on an I/O thread. Checked exceptions fail the future.
+    public <T> CompletableFuture<T> supply(Callable<T> call) {
+        return track(CompletableFuture.supplyAsync(() -> {
+            try {
+                return call.call();
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        }, pool));
+    }
+
+    public CompletableFuture<Void> run(Runnable task) {
+        return track(CompletableFuture.runAsync(task, pool));
+    }
+
+    // Counts the future as in flight until it completes.
+    public <T> CompletableFuture<T> track(CompletableFuture<T> future) {
+        changed(inFlight.incrementAndGet());
+        future.whenComplete((value, error) -> changed(inFlight.decrementAndGet()));
+        return future;
+    }
+
+    public int inFlight() {
+        return inFlight.get();
+    }
+
+    // Called with the new count, on whichever thread changed it.
+    public void addListener(IntConsumer listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(IntConsumer listener) {
+        listeners.remove(listener);
+    }
+
+    public Lane newLane() {
+        return new Lane();
+    }
+
+    private void changed(int count) {
+        for (IntConsumer listener : listeners) {
+            listener.accept(count);
+        }
+    }
+
+    // Starts calls one after another in submission order, so mutations
+    // reach the repository in the order the user made them. A call only
+    // waits for the previous one to be handed over, not for it to become
+    // durable, so the repository can still batch them.
+    public class Lane {
+        private CompletableFuture<Void> handedOver = CompletableFuture.completedFuture(null);
+
+        public synchronized <T> CompletableFuture<T> submit(Supplier<CompletableFuture<T>> call) {
+            CompletableFuture<CompletableFuture<T>> started = handedOver.thenApplyAsync(v -> call.get(), pool);
+            handedOver = started.handle((future, error) -> null);
+            return track(started.thenCompose(future -> future));
+        }
+
+        // Blocks until every call submitted so far has been handed over.
+        public void drain() {
+            CompletableFuture<Void> last;
+            synchronized (this) {
+                last = handedOver;
+            }
+            last.join();
+        }
+    }
+}
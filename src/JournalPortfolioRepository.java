@@ -0,0 +1,441 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+// Local, database-free backend. Each user gets a directory holding a
+// PortfolioSnapshot of the whole portfolio and an append-only journal of mutations
+// made since that snapshot. A load maps the snapshot and replays the
+// journal; once the journal grows past compactEvery records (and on close)
+// the state is written as a new snapshot and the journal starts over.
+//
+// Journal records are [int length][int crc32][payload]. A record that is cut
+// short or fails its checksum marks the end of the log, which is where a
+// crash in the middle of an append leaves it, and is truncated away.
+// Snapshot and journal both carry a generation number; a journal older than
+// the snapshot was already folded into it and is discarded.
+public class JournalPortfolioRepository implements PortfolioRepository {
+
+    public enum SyncPolicy {
+        // force() after every record
+        ALWAYS,
+        // force() at most once per sync interval, and on flush/close; a
+        // timer syncs what is left unsynced when appends stop
+        INTERVAL,
+        // leave it to the OS until flush/close
+        NONE
+    }
+
+    private static final int JOURNAL_MAGIC = 0x504A4E4C;
+    private static final int FORMAT_VERSION = 1;
+    private static final int JOURNAL_HEADER = 16;
+    private static final int RECORD_HEADER = 8;
+
+    private static final byte ADD = 1;
+    private static final byte SET = 2;
+    private static final byte DELETE = 3;
+    private static final byte GOAL = 4;
+
+    private final Path root;
+    private final SyncPolicy syncPolicy;
+    private final long syncIntervalMs;
+    private final int compactEvery;
+    private final Map<String, UserLog> logs = new HashMap<>();
+    // Started on the first deferred sync, stopped by close().
+    private ScheduledExecutorService syncTimer;
+
+    public JournalPortfolioRepository(Path root) {
+        this(root,
+             SyncPolicy.valueOf(System.getProperty("ppms.journal.sync", "INTERVAL").toUpperCase()),
+             Long.getLong("ppms.journal.syncMs", 200),
+             Integer.getInteger("ppms.journal.compactEvery", 10000));
+    }
+
+    public JournalPortfolioRepository(Path root, SyncPolicy syncPolicy, long syncIntervalMs, int compactEvery) {
+        if (compactEvery < 1) throw new IllegalArgumentException("compactEvery must be positive");
+        this.root = root;
+        this.syncPolicy = syncPolicy;
+        this.syncIntervalMs = syncIntervalMs;
+        this.compactEvery = compactEvery;
+    }
+
+    public static Path defaultDirectory() {
+        return Paths.get(System.getProperty("ppms.journal.dir",
+                System.getProperty("user.home") + "/.ppms"));
+    }
+
+    @Override
+    public synchronized PortfolioData load(String username) {
+        try {
+            return log(username).toData();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not load portfolio for " + username, e);
+        }
+    }
+
+    @Override
+    public CompletableFuture<Void> addHolding(String username, String symbol, double shares, double value) {
+        return append(username, holdingRecord(ADD, symbol, shares, value));
+    }
+
+    @Override
+    public CompletableFuture<Void> setHolding(String username, String symbol, double shares, double value) {
+        return append(username, holdingRecord(SET, symbol, shares, value));
+    }
+
+    @Override
+    public CompletableFuture<Void> removeHolding(String username, String symbol) {
+        byte[] name = symbol.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer record = ByteBuffer.allocate(1 + 4 + name.length);
+        record.put(DELETE);
+        putString(record, name);
+        return append(username, record);
+    }
+
+    @Override
+    public CompletableFuture<Void> addGoal(String username, String name, double targetValue, String deadline) {
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        byte[] deadlineBytes = deadline.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer record = ByteBuffer.allocate(1 + 4 + nameBytes.length + 8 + 4 + deadlineBytes.length);
+        record.put(GOAL);
+        putString(record, nameBytes);
+        record.putDouble(targetValue);
+        putString(record, deadlineBytes);
+        return append(username, record);
+    }
+
+    // A single local writer can't be overtaken by anyone else.
+    @Override
+    public boolean consumeStale(String username) {
+        return false;
+    }
+
+    @Override
+    public synchronized void flush(String username) {
+        UserLog log = logs.get(username);
+        if (log != null) {
+            try {
+                log.sync();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void flushAll() {
+        for (String username : logs.keySet().toArray(new String[0])) {
+            flush(username);
+        }
+    }
+
+    // Compacts every open log into a fresh snapshot and closes it.
+    @Override
+    public synchronized void close() {
+        for (UserLog log : logs.values()) {
+            try {
+                log.compact();
+                log.close();
+            } catch (IOException e) {
+                System.err.println("Could not close journal in " + log.dir + ": " + e.getMessage());
+            }
+        }
+        logs.clear();
+        if (syncTimer != null) {
+            syncTimer.shutdownNow();
+            syncTimer = null;
+        }
+    }
+
+    // Called with the repository locked, after an INTERVAL append that was
+    // not synced. Without it the last record before a quiet period would
+    // stay unsynced until the next append or flush.
+    private void scheduleSync(String username, UserLog log, long delayMs) {
+        if (log.syncScheduled) {
+            return;
+        }
+        if (syncTimer == null) {
+            syncTimer = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "portfolio-journal-sync");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        log.syncScheduled = true;
+        syncTimer.schedule(() -> syncDeferred(username, log), delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    private synchronized void syncDeferred(String username, UserLog log) {
+        log.syncScheduled = false;
+        if (logs.get(username) != log) {
+            return;
+        }
+        try {
+            log.sync();
+        } catch (IOException e) {
+            System.err.println("Journal sync failed for " + username + ": " + e.getMessage());
+        }
+    }
+
+    private synchronized CompletableFuture<Void> append(String username, ByteBuffer record) {
+        try {
+            record.flip();
+            UserLog log = log(username);
+            log.append(record);
+            if (syncPolicy == SyncPolicy.INTERVAL && log.unsynced) {
+                long elapsed = System.currentTimeMillis() - log.lastSync;
+                scheduleSync(username, log, Math.max(0, syncIntervalMs - elapsed));
+            }
+            return CompletableFuture.completedFuture(null);
+        } catch (IOException e) {
+            System.err.println("Journal write failed for " + username + ": " + e.getMessage());
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private UserLog log(String username) throws IOException {
+        UserLog log = logs.get(username);
+        if (log == null) {
+            log = new UserLog(root.resolve(directoryName(username)));
+            logs.put(username, log);
+        }
+        return log;
+    }
+
+    // Keeps usernames safe as path segments: anything outside [A-Za-z0-9._-]
+    // is written as %XX of its UTF-8 bytes.
+    static String directoryName(String username) {
+        StringBuilder sb = new StringBuilder();
+        for (byte b : username.getBytes(StandardCharsets.UTF_8)) {
+            char c = (char) (b & 0xff);
+            if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                    || c == '.' || c == '_' || c == '-') {
+                sb.append(c);
+            } else {
+                sb.append('%').append(String.format("%02X", b & 0xff));
+            }
+        }
+        if (sb.length() == 0 || sb.charAt(0) == '.') {
+            sb.insert(0, '_');
+        }
+        return sb.toString();
+    }
+
+    private static ByteBuffer holdingRecord(byte type, String symbol, double shares, double value) {
+        byte[] name = symbol.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer record = ByteBuffer.allocate(1 + 4 + name.length + 16);
+        record.put(type);
+        putString(record, name);
+        record.putDouble(shares);
+        record.putDouble(value);
+        return record;
+    }
+
+    private static void putString(ByteBuffer buffer, byte[] bytes) {
+        buffer.putInt(bytes.length);
+        buffer.put(bytes);
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) throw new IllegalArgumentException("Bad string length " + length);
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int crc(ByteBuffer buffer) {
+        CRC32 crc = new CRC32();
+        crc.update(buffer.duplicate());
+        return (int) crc.getValue();
+    }
+
+    private class UserLog {
+        final Path dir;
+        final Path snapshotPath;
+        final Path journalPath;
+        final Map<String, double[]> holdings = new LinkedHashMap<>();
+        final List<PortfolioData.GoalEntry> goals = new java.util.ArrayList<>();
+        FileChannel journal;
+        long generation;
+        int recordsSinceSnapshot;
+        long lastSync;
+        boolean unsynced;
+        boolean syncScheduled;
+
+        UserLog(Path dir) throws IOException {
+            this.dir = dir;
+            this.snapshotPath = dir.resolve("snapshot.bin");
+            this.journalPath = dir.resolve("journal.log");
+            Files.createDirectories(dir);
+            if (Files.exists(snapshotPath)) {
+                readSnapshot();
+            }
+            journal = FileChannel.open(journalPath, StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            replayJournal();
+            lastSync = System.currentTimeMillis();
+        }
+
+        PortfolioData toData() {
+            PortfolioData data = new PortfolioData();
+            for (Map.Entry<String, double[]> entry : holdings.entrySet()) {
+                data.addHolding(entry.getKey(), entry.getValue()[0], entry.getValue()[1]);
+            }
+            data.getGoals().addAll(goals);
+            return data;
+        }
+
+        void append(ByteBuffer payload) throws IOException {
+            apply(payload.duplicate());
+            ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER);
+            header.putInt(payload.remaining());
+            header.putInt(crc(payload));
+            header.flip();
+            ByteBuffer[] record = { header, payload };
+            long end = journal.size();
+            journal.position(end);
+            while (header.hasRemaining() || payload.hasRemaining()) {
+                journal.write(record);
+            }
+            unsynced = true;
+            if (syncPolicy == SyncPolicy.ALWAYS
+                    || (syncPolicy == SyncPolicy.INTERVAL && System.currentTimeMillis() - lastSync >= syncIntervalMs)) {
+                sync();
+            }
+            if (++recordsSinceSnapshot >= compactEvery) {
+                compact();
+            }
+        }
+
+        void sync() throws IOException {
+            if (unsynced) {
+                journal.force(false);
+                unsynced = false;
+            }
+            lastSync = System.currentTimeMillis();
+        }
+
+        private void apply(ByteBuffer record) {
+            byte type = record.get();
+            String symbol = getString(record);
+            switch (type) {
+                case ADD:
+                case SET:
+                    holdings.put(symbol, new double[] { record.getDouble(), record.getDouble() });
+                    break;
+                case DELETE:
+                    holdings.remove(symbol);
+                    break;
+                case GOAL:
+                    double target = record.getDouble();
+                    goals.add(new PortfolioData.GoalEntry(symbol, target, getString(record)));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown journal record type " + type);
+            }
+        }
+
+        private void replayJournal() throws IOException {
+            long size = journal.size();
+            if (size < JOURNAL_HEADER) {
+                resetJournal();
+                return;
+            }
+            MappedByteBuffer buffer = journal.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (buffer.getInt() != JOURNAL_MAGIC || buffer.getInt() != FORMAT_VERSION) {
+                throw new IOException("Not a portfolio journal: " + journalPath);
+            }
+            if (buffer.getLong() != generation) {
+                // Written before the current snapshot, or for a snapshot that
+                // is gone; either way it can't be applied on top of this state.
+                resetJournal();
+                return;
+            }
+            long valid = JOURNAL_HEADER;
+            while (buffer.remaining() >= RECORD_HEADER) {
+                int length = buffer.getInt();
+                int checksum = buffer.getInt();
+                if (length <= 0 || length > buffer.remaining()) {
+                    break;
+                }
+                ByteBuffer payload = buffer.slice();
+                payload.limit(length);
+                if (crc(payload) != checksum) {
+                    break;
+                }
+                try {
+                    apply(payload);
+                } catch (RuntimeException e) {
+                    break;
+                }
+                buffer.position(buffer.position() + length);
+                valid = buffer.position();
+                recordsSinceSnapshot++;
+            }
+            if (valid < size) {
+                System.err.println("Truncating " + (size - valid) + " bytes of torn journal in " + dir);
+                journal.truncate(valid);
+                journal.force(false);
+            }
+        }
+
+        private void resetJournal() throws IOException {
+            journal.truncate(0);
+            ByteBuffer header = ByteBuffer.allocate(JOURNAL_HEADER);
+            header.putInt(JOURNAL_MAGIC).putInt(FORMAT_VERSION).putLong(generation);
+            header.flip();
+            journal.position(0);
+            while (header.hasRemaining()) {
+                journal.write(header);
+            }
+            journal.force(true);
+            recordsSinceSnapshot = 0;
+            unsynced = false;
+        }
+
+        private void readSnapshot() throws IOException {
+            PortfolioSnapshot snapshot = PortfolioSnapshot.read(snapshotPath);
+            generation = snapshot.generation;
+            for (int i = 0; i < snapshot.holdingCount(); i++) {
+                holdings.put(snapshot.symbols[i], new double[] { snapshot.shares[i], snapshot.prices[i] });
+            }
+            goals.addAll(snapshot.toData().getGoals());
+        }
+
+        // Writes the state under the next generation (PortfolioSnapshot
+        // renames a temporary file into place), and only then starts a new
+        // journal. A crash between the two leaves an old-generation journal
+        // that the next load discards.
+        void compact() throws IOException {
+            if (recordsSinceSnapshot == 0 && Files.exists(snapshotPath)) {
+                return;
+            }
+            PortfolioSnapshot snapshot = PortfolioSnapshot.of(toData());
+            snapshot.generation = generation + 1;
+            snapshot.write(snapshotPath, false);
+            generation++;
+            resetJournal();
+        }
+
+        void close() throws IOException {
+            sync();
+            journal.close();
+        }
+    }
+}
@@ -4,5 +4,8 @@ public interface ListADT<T> {
     void add(T item);
     void clear();
     boolean remove(T item);
+    T removeAt(int index);
+    T swapRemove(int index);
+    void set(int index, T item);
 	boolean isEmpty();
 }
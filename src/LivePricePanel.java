@@ -2,21 +2,21 @@ import javafx.geometry.Insets;
 import javafx.scene.control.*;
 import javafx.scene.layout.*;
 import javafx.scene.text.Font;
-import com.google.gson.Gson;
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
-import java.net.URL;
+import java.util.concurrent.CompletionException;
+import javafx.application.Platform;
 
 public class LivePricePanel {
 
+    private final TickEventBus ticks;
     private BorderPane mainPane;
     private TextField symbolField;
     private ComboBox<String> typeCombo;
     private Label resultLabel;
-    private static final String FINNHUB_API_KEY = "cvstuepr01qhup0t2av0cvstuepr01qhup0t2avg";
+    private Button fetchButton;
 
-    public LivePricePanel() {
+    // Fetched quotes are also published to the bus as live ticks.
+    public LivePricePanel(TickEventBus ticks) {
+        this.ticks = ticks;
         this.mainPane = buildPanel();
     }
 
@@ -42,7 +42,7 @@ public class LivePricePanel {
         typeCombo = new ComboBox<>();
         typeCombo.getItems().addAll("Stock", "Crypto", "Mutual Fund");
         typeCombo.setPromptText("Select Asset Type");
-        Button fetchButton = new Button("Fetch Price");
+        fetchButton = new Button("Fetch Price");
         fetchButton.setOnAction(e -> fetchAndDisplayPrice());
         resultLabel = new Label("Price info will appear here.");
         resultLabel.setStyle("-fx-font-size: 14; -fx-text-fill: #333333;");
@@ -63,49 +63,32 @@ public class LivePricePanel {
             resultLabel.setText("Please select an asset type (Stock, Crypto, or Mutual Fund).");
             return;
         }
-        try {
-            QuoteResponse quote = fetchQuote(symbol);
-            if (quote == null) {
-                resultLabel.setText("No data returned for symbol: " + symbol);
-            } else {
-                resultLabel.setText(String.format(
-                    "Type: %s\nSymbol: %s\nCurrent Price: %.2f\nChange: %.2f\nPercent Change: %.2f%%",
-                    assetType, symbol, quote.c, quote.d, quote.dp
-                ));
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
-            resultLabel.setText("Error fetching price for " + symbol + ": " + e.getMessage());
-        }
-    }
-
-    private QuoteResponse fetchQuote(String symbol) throws Exception {
-        String urlStr = "https://finnhub.io/api/v1/quote?symbol=" + symbol + "&token=" + FINNHUB_API_KEY;
-        URL url = new URL(urlStr);
-        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-        conn.setRequestMethod("GET");
-        int status = conn.getResponseCode();
-        if (status != 200) {
-            throw new RuntimeException("Finnhub request failed, HTTP status: " + status);
-        }
-        BufferedReader in = new BufferedReader(new InputStreamReader(conn.getInputStream()));
-        StringBuilder response = new StringBuilder();
-        String line;
-        while ((line = in.readLine()) != null) {
-            response.append(line);
-        }
-        in.close();
-        Gson gson = new Gson();
-        return gson.fromJson(response.toString(), QuoteResponse.class);
-    }
-
-    private static class QuoteResponse {
-        public double c;
-        public double d;
-        public double dp;
-        public double h;
-        public double l;
-        public double o;
-        public double pc;
+        fetchButton.setDisable(true);
+        resultLabel.setText("Fetching " + symbol + "...");
+        // A cached quote is shown but not published: it may be minutes old.
+        long asked = System.currentTimeMillis();
+        QuoteCache.shared().get(symbol)
+            .thenApply(quote -> {
+                if (quote != null && quote.c > 0 && quote.fetchedAt >= asked) {
+                    ticks.publish(symbol, quote.c, quote.fetchedAt, TickEventBus.SOURCE_LIVE);
+                }
+                return quote;
+            })
+            .whenCompleteAsync((quote, error) -> {
+                fetchButton.setDisable(false);
+                if (error != null) {
+                    Throwable cause = error instanceof CompletionException && error.getCause() != null
+                            ? error.getCause() : error;
+                    cause.printStackTrace();
+                    resultLabel.setText("Error fetching price for " + symbol + ": " + cause.getMessage());
+                } else if (quote == null) {
+                    resultLabel.setText("No data returned for symbol: " + symbol);
+                } else {
+                    resultLabel.setText(String.format(
+                        "Type: %s\nSymbol: %s\nCurrent Price: %.2f\nChange: %.2f\nPercent Change: %.2f%%",
+                        assetType, symbol, quote.c, quote.d, quote.dp
+                    ));
+                }
+            }, Platform::runLater);
     }
 }
@@ -67,19 +67,27 @@ public class LoginPage extends Application {
                         ex.printStackTrace();
                     }
                 });
-            } else if (validateLogin(username, password)) {
-                messageLabel.setText("Login successful!");
-                Session.setCurrentUser(username);
-                Platform.runLater(() -> {
-                    try {
-                        new PPMSApp().start(new Stage());
-                        primaryStage.close();
-                    } catch (Exception ex) {
-                        ex.printStackTrace();
-                    }
-                });
             } else {
-                messageLabel.setText("Invalid username or password.");
+                // The user lookup goes to the database; keep the window
+                // responsive and ignore further clicks until it answers.
+                loginButton.setDisable(true);
+                messageLabel.setText("Signing in...");
+                IoExecutor.shared().supply(() -> validateLogin(username, password))
+                    .whenCompleteAsync((valid, error) -> {
+                        loginButton.setDisable(false);
+                        if (error == null && valid) {
+                            messageLabel.setText("Login successful!");
+                            Session.setCurrentUser(username);
+                            try {
+                                new PPMSApp().start(new Stage());
+                                primaryStage.close();
+                            } catch (Exception ex) {
+                                ex.printStackTrace();
+                            }
+                        } else {
+                            messageLabel.setText("Invalid username or password.");
+                        }
+                    }, Platform::runLater);
             }
         });
         Scene scene = new Scene(grid, 400, 250);
@@ -88,6 +96,10 @@ public class LoginPage extends Application {
     }
 
     private boolean validateLogin(String username, String password) {
+        // The local repository has no user store; any name opens its own portfolio.
+        if (PortfolioRepository.isLocal()) {
+            return !username.trim().isEmpty();
+        }
         try {
             MongoDatabase database = MongoDBConnection.getDatabase();
             MongoCollection<Document> collection = database.getCollection("user");
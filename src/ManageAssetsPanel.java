@@ -1,4 +1,6 @@
 import java.util.Date;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import javafx.geometry.Insets;
 import javafx.scene.control.*;
 import javafx.scene.control.cell.PropertyValueFactory;
@@ -7,15 +9,18 @@ import javafx.scene.text.Font;
 
 public class ManageAssetsPanel {
     private final PortfolioManager portfolio;
-    private final HeapADT<Asset> heap;
+    private final AsyncPortfolioService service;
+    private final IndexedHeapADT<Asset> heap;
     private final Runnable updateCallback;
     private final BorderPane pane;
     private TableView<Asset> assetTable;
     
     private StackADT<Asset> assetUndoStack = new ArrayStackImpl<>();
 
-    public ManageAssetsPanel(PortfolioManager portfolio, HeapADT<Asset> heap, Runnable updateCallback) {
+    public ManageAssetsPanel(PortfolioManager portfolio, AsyncPortfolioService service,
+                             IndexedHeapADT<Asset> heap, Runnable updateCallback) {
         this.portfolio = portfolio;
+        this.service = service;
         this.heap = heap;
         this.updateCallback = updateCallback;
         this.pane = createManagePane();
@@ -54,7 +59,7 @@ public class ManageAssetsPanel {
                     throw new IllegalArgumentException("All fields must be valid.");
                 }
                 Asset asset = new Asset(name, type, price, quantity, new Date());
-                portfolio.addAsset(asset);
+                reportFailure(service.addAsset(asset), "Adding " + name);
                 heap.add(asset);
                 updateCallback.run();
                 updateAssetTable();
@@ -67,10 +72,16 @@ public class ManageAssetsPanel {
         Button editButton = new Button("Edit Selected Asset");
         editButton.setOnAction(e -> editSelectedAsset(nameField, typeBox, quantityField, priceField));
 
+        ComboBox<String> sortKeyBox = new ComboBox<>();
+        sortKeyBox.getItems().addAll("Volatility", "Value", "Return", "Drawdown");
+        sortKeyBox.setValue("Volatility");
+
         Button sortButton = new Button("Sort Assets");
         sortButton.setOnAction(e -> {
             ListADT<Asset> currentAssets = portfolio.getAssets();
-            ListADT<Asset> sortedAssets = SortingUtil.mergeSort(currentAssets);
+            ListADT<Asset> sortedAssets = SortingUtil.sortByKeys(currentAssets,
+                    sortKeyFor(sortKeyBox.getValue()),
+                    SortingUtil.SortKey.descending(Asset::getValue));
             assetTable.getItems().clear();
             for (int i = 0; i < sortedAssets.size(); i++) {
                 assetTable.getItems().add(sortedAssets.get(i));
@@ -81,7 +92,7 @@ public class ManageAssetsPanel {
         undoDeleteButton.setOnAction(e -> {
             if (!assetUndoStack.isEmpty()) {
                 Asset assetToRestore = assetUndoStack.pop();
-                portfolio.addAsset(assetToRestore);
+                restore(assetToRestore);
                 updateCallback.run();
                 updateAssetTable();
             } else {
@@ -89,9 +100,22 @@ public class ManageAssetsPanel {
             }
         });
         
+        Button undoAllButton = new Button("Undo All Deletes");
+        undoAllButton.setOnAction(e -> {
+            if (assetUndoStack.isEmpty()) {
+                showAlert("Info", "No asset to undo deletion.");
+                return;
+            }
+            while (!assetUndoStack.isEmpty()) {
+                restore(assetUndoStack.pop());
+            }
+            updateCallback.run();
+            updateAssetTable();
+        });
+        
         inputSection.getChildren().addAll(
             titleLabel, nameField, typeBox, quantityField, priceField, 
-            addButton, editButton, sortButton, undoDeleteButton
+            addButton, editButton, sortKeyBox, sortButton, undoDeleteButton, undoAllButton
         );
 
         assetTable = new TableView<>();
@@ -115,7 +139,8 @@ public class ManageAssetsPanel {
             Asset selected = assetTable.getSelectionModel().getSelectedItem();
             if (selected != null) {
                 assetUndoStack.push(selected);
-                portfolio.deleteAsset(selected.getName());
+                reportFailure(service.deleteAsset(selected), "Deleting " + selected.getName());
+                heap.remove(selected);
                 updateCallback.run();
                 updateAssetTable();
             } else {
@@ -127,13 +152,16 @@ public class ManageAssetsPanel {
         deleteAllButton.setOnAction(e -> {
             Alert confirm = new Alert(Alert.AlertType.CONFIRMATION, "Delete all assets?");
             if (confirm.showAndWait().get() == ButtonType.OK) {
-                ListADT<Asset> assets = portfolio.getAssets();
+                // Deleting swap-removes from the live list, so walk a copy.
+                ListADT<Asset> assets = portfolio.getAssetsSnapshot();
+                CompletableFuture<?>[] deletes = new CompletableFuture<?>[assets.size()];
                 for (int i = 0; i < assets.size(); i++) {
                     assetUndoStack.push(assets.get(i));
                 }
-                while (!portfolio.getAssets().isEmpty()) {
-                    portfolio.deleteAsset(portfolio.getAssets().get(0).getName());
+                for (int i = 0; i < assets.size(); i++) {
+                    deletes[i] = service.deleteAsset(assets.get(i));
                 }
+                reportFailure(CompletableFuture.allOf(deletes), "Deleting all assets");
                 updateCallback.run();
                 updateAssetTable();
             }
@@ -168,14 +196,7 @@ public class ManageAssetsPanel {
                 throw new IllegalArgumentException("All fields must be valid.");
             }
             
-            Asset oldAsset = null;
-            ListADT<Asset> assets = portfolio.getAssets();
-            for (int i = 0; i < assets.size(); i++) {
-                if (assets.get(i).getName().equals(oldName)) {
-                    oldAsset = assets.get(i);
-                    break;
-                }
-            }
+            Asset oldAsset = portfolio.findAsset(oldName);
             
             if (oldAsset == null) {
                 showAlert("Warning", "Asset not found.");
@@ -183,7 +204,7 @@ public class ManageAssetsPanel {
             }
             
             Asset updatedAsset = new Asset(oldName, newType, newPrice, newQuantity, new Date());
-            portfolio.editAsset(oldAsset, updatedAsset);
+            reportFailure(service.editAsset(oldAsset, updatedAsset), "Editing " + oldName);
             
             updateCallback.run();
             updateAssetTable();
@@ -194,17 +215,53 @@ public class ManageAssetsPanel {
         }
     }
 
-    private void resetPriceHistory(TextField nameField) {
-        String name = nameField.getText();
-        ListADT<Asset> assets = portfolio.getAssets();
-        for (int i = 0; i < assets.size(); i++) {
-            Asset asset = assets.get(i);
-            if (asset.getName().equals(name)) {
-                asset.getPriceHistory().clear();
-                asset.getPriceHistory().add(asset.getCurrentPrice());
+    // A failed undo goes back on the stack so it can be retried.
+    private void restore(Asset asset) {
+        CompletableFuture<Void> write = service.addAsset(asset);
+        write.whenComplete((v, error) -> {
+            if (error != null) {
+                assetUndoStack.push(asset);
+            }
+        });
+        reportFailure(write, "Restoring " + asset.getName());
+        heap.add(asset);
+    }
+
+    // The change is already on screen; if its write fails the service has
+    // undone it, so redraw and say why.
+    private void reportFailure(CompletableFuture<?> write, String action) {
+        write.whenComplete((v, error) -> {
+            if (error != null) {
+                Throwable cause = error instanceof CompletionException && error.getCause() != null
+                        ? error.getCause() : error;
                 updateCallback.run();
-                break;
+                updateAssetTable();
+                showAlert("Error", action + " could not be saved and was undone: " + cause.getMessage());
             }
+        });
+    }
+
+    private SortingUtil.SortKey<Asset> sortKeyFor(String column) {
+        if (column == null) {
+            return SortingUtil.SortKey.descending(Asset::getVolatility);
+        }
+        switch (column) {
+            case "Value":
+                return SortingUtil.SortKey.descending(Asset::getValue);
+            case "Return":
+                return SortingUtil.SortKey.descending(Asset::getReturn);
+            case "Drawdown":
+                return SortingUtil.SortKey.descending(Asset::getMaxDrawdown);
+            default:
+                return SortingUtil.SortKey.descending(Asset::getVolatility);
+        }
+    }
+
+    private void resetPriceHistory(TextField nameField) {
+        Asset asset = portfolio.findAsset(nameField.getText());
+        if (asset != null) {
+            asset.resetPriceHistory();
+            updateCallback.run();
         }
     }
 
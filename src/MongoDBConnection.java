@@ -1,6 +1,18 @@
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import com.mongodb.MongoClient;
+import com.mongodb.MongoClientOptions;
 import com.mongodb.MongoClientURI;
+import com.mongodb.ReadConcern;
+import com.mongodb.WriteConcern;
 import com.mongodb.client.MongoDatabase;
+import com.mongodb.event.ConnectionAddedEvent;
+import com.mongodb.event.ConnectionCheckedInEvent;
+import com.mongodb.event.ConnectionCheckedOutEvent;
+import com.mongodb.event.ConnectionPoolListenerAdapter;
+import com.mongodb.event.ConnectionPoolWaitQueueEnteredEvent;
+import com.mongodb.event.ConnectionPoolWaitQueueExitedEvent;
+import com.mongodb.event.ConnectionRemovedEvent;
 
 public class MongoDBConnection {
 
@@ -8,10 +20,182 @@ public class MongoDBConnection {
     // Database name
     private static final String DATABASE_NAME = "psa";
 
+    // Pool and timeout settings, overridable with -Dppms.mongo.<name>=<value>
+    private static final int MAX_POOL_SIZE = Integer.getInteger("ppms.mongo.maxPoolSize", 20);
+    private static final int MIN_POOL_SIZE = Integer.getInteger("ppms.mongo.minPoolSize", 2);
+    private static final int MAX_WAIT_MS = Integer.getInteger("ppms.mongo.maxWaitMs", 5000);
+    private static final int MAX_IDLE_MS = Integer.getInteger("ppms.mongo.maxIdleMs", 300000);
+    private static final int CONNECT_TIMEOUT_MS = Integer.getInteger("ppms.mongo.connectTimeoutMs", 10000);
+    private static final int SOCKET_TIMEOUT_MS = Integer.getInteger("ppms.mongo.socketTimeoutMs", 30000);
+    private static final int SERVER_SELECTION_TIMEOUT_MS = Integer.getInteger("ppms.mongo.serverSelectionTimeoutMs", 10000);
+    private static final String WRITE_CONCERN = System.getProperty("ppms.mongo.writeConcern", "acknowledged");
+    private static final String READ_CONCERN = System.getProperty("ppms.mongo.readConcern", "local");
 
+    private static final PoolStats POOL_STATS = new PoolStats();
+    private static final Object LOCK = new Object();
+    private static MongoClient client;
+    private static volatile MongoDatabase database;
+    private static boolean shutdownHookInstalled;
+
+    // One MongoClient (and so one connection pool) is shared by every caller.
+    // It is created on first use and again after shutdown().
     public static MongoDatabase getDatabase() {
-        MongoClientURI uri = new MongoClientURI(CONNECTION_STRING);
-        MongoClient mongoClient = new MongoClient(uri);
-        return mongoClient.getDatabase(DATABASE_NAME);
+        MongoDatabase db = database;
+        if (db != null) {
+            return db;
+        }
+        synchronized (LOCK) {
+            if (database == null) {
+                MongoClientURI uri = new MongoClientURI(CONNECTION_STRING, options());
+                client = new MongoClient(uri);
+                database = client.getDatabase(DATABASE_NAME);
+                if (!shutdownHookInstalled) {
+                    Runtime.getRuntime().addShutdownHook(new Thread(MongoDBConnection::shutdown, "mongo-shutdown"));
+                    shutdownHookInstalled = true;
+                }
+            }
+            return database;
+        }
+    }
+
+    public static void shutdown() {
+        synchronized (LOCK) {
+            if (client != null) {
+                client.close();
+                client = null;
+                database = null;
+            }
+        }
+    }
+
+    public static PoolStats getPoolStats() {
+        return POOL_STATS;
+    }
+
+    private static MongoClientOptions.Builder options() {
+        return MongoClientOptions.builder()
+                .connectionsPerHost(MAX_POOL_SIZE)
+                .minConnectionsPerHost(MIN_POOL_SIZE)
+                .maxWaitTime(MAX_WAIT_MS)
+                .maxConnectionIdleTime(MAX_IDLE_MS)
+                .connectTimeout(CONNECT_TIMEOUT_MS)
+                .socketTimeout(SOCKET_TIMEOUT_MS)
+                .serverSelectionTimeout(SERVER_SELECTION_TIMEOUT_MS)
+                .writeConcern(parseWriteConcern(WRITE_CONCERN))
+                .readConcern(parseReadConcern(READ_CONCERN))
+                .addConnectionPoolListener(POOL_STATS);
+    }
+
+    private static WriteConcern parseWriteConcern(String name) {
+        switch (name.toLowerCase()) {
+            case "majority":
+                return WriteConcern.MAJORITY;
+            case "journaled":
+                return WriteConcern.JOURNALED;
+            case "unacknowledged":
+                return WriteConcern.UNACKNOWLEDGED;
+            default:
+                return WriteConcern.ACKNOWLEDGED;
+        }
+    }
+
+    private static ReadConcern parseReadConcern(String name) {
+        switch (name.toLowerCase()) {
+            case "majority":
+                return ReadConcern.MAJORITY;
+            case "available":
+                return ReadConcern.AVAILABLE;
+            case "default":
+                return ReadConcern.DEFAULT;
+            default:
+                return ReadConcern.LOCAL;
+        }
+    }
+
+    // Live pool counters fed by the driver's pool events. Checkouts happen on
+    // the calling thread, so the wait is timed with a thread-local start.
+    public static class PoolStats extends ConnectionPoolListenerAdapter {
+        private final AtomicInteger poolSize = new AtomicInteger();
+        private final AtomicInteger checkedOut = new AtomicInteger();
+        private final AtomicInteger waiting = new AtomicInteger();
+        private final AtomicLong checkouts = new AtomicLong();
+        private final AtomicLong totalWaitNanos = new AtomicLong();
+        private final AtomicLong maxWaitNanos = new AtomicLong();
+        private final ThreadLocal<Long> waitStart = new ThreadLocal<>();
+
+        @Override
+        public void connectionAdded(ConnectionAddedEvent event) {
+            poolSize.incrementAndGet();
+        }
+
+        @Override
+        public void connectionRemoved(ConnectionRemovedEvent event) {
+            poolSize.decrementAndGet();
+        }
+
+        // 3.12 deprecates the wait-queue events but has no check-out-started
+        // event to replace them, so they are the only way to see a wait.
+        @Override
+        @SuppressWarnings("deprecation")
+        public void waitQueueEntered(ConnectionPoolWaitQueueEnteredEvent event) {
+            waiting.incrementAndGet();
+            waitStart.set(System.nanoTime());
+        }
+
+        @Override
+        @SuppressWarnings("deprecation")
+        public void waitQueueExited(ConnectionPoolWaitQueueExitedEvent event) {
+            waiting.decrementAndGet();
+            Long start = waitStart.get();
+            if (start != null) {
+                waitStart.remove();
+                long waited = System.nanoTime() - start;
+                totalWaitNanos.addAndGet(waited);
+                maxWaitNanos.accumulateAndGet(waited, Math::max);
+            }
+        }
+
+        @Override
+        public void connectionCheckedOut(ConnectionCheckedOutEvent event) {
+            checkedOut.incrementAndGet();
+            checkouts.incrementAndGet();
+        }
+
+        @Override
+        public void connectionCheckedIn(ConnectionCheckedInEvent event) {
+            checkedOut.decrementAndGet();
+        }
+
+        public int getPoolSize() {
+            return poolSize.get();
+        }
+
+        public int getCheckedOut() {
+            return checkedOut.get();
+        }
+
+        public int getWaiting() {
+            return waiting.get();
+        }
+
+        public long getCheckoutCount() {
+            return checkouts.get();
+        }
+
+        public double getAverageWaitMillis() {
+            long count = checkouts.get();
+            return count == 0 ? 0 : totalWaitNanos.get() / 1e6 / count;
+        }
+
+        public double getMaxWaitMillis() {
+            return maxWaitNanos.get() / 1e6;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("pool=%d checkedOut=%d waiting=%d checkouts=%d avgWait=%.2fms maxWait=%.2fms",
+                    getPoolSize(), getCheckedOut(), getWaiting(), getCheckoutCount(),
+                    getAverageWaitMillis(), getMaxWaitMillis());
+        }
     }
 }
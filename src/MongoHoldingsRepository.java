@@ -0,0 +1,180 @@
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.DeleteManyModel;
+import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.Indexes;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.WriteModel;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+
+// One document per holding in the "holdings" collection, keyed by
+// (username, symbol) under a unique compound index. Editing a holding
+// rewrites that one small document, and no user is limited by the 16 MB
+// document size. Goals stay in the user's "portfolio" document.
+//
+// Holdings never share a document, so there is no version to guard and
+// concurrent writers to different holdings do not conflict; consumeStale
+// is always false. Select with -Dppms.repository=holdings and convert
+// existing users with HoldingsMigration.
+public class MongoHoldingsRepository implements PortfolioRepository, WriteBehindQueue.Sink {
+    public static final String COLLECTION = "holdings";
+    public static final int DEFAULT_BATCH_SIZE = Integer.getInteger("ppms.holdings.batchSize", 1000);
+
+    private static final Bson HOLDING_FIELDS = Projections.fields(
+            Projections.include("symbol", "shares", "value"), Projections.excludeId());
+    private static final Bson GOAL_FIELDS = Projections.fields(
+            Projections.include("goals"), Projections.excludeId());
+
+    private static volatile boolean indexed;
+
+    private final WriteBehindQueue writes = new WriteBehindQueue(this);
+    private final int batchSize;
+
+    public MongoHoldingsRepository() {
+        this(DEFAULT_BATCH_SIZE);
+    }
+
+    public MongoHoldingsRepository(int batchSize) {
+        if (batchSize < 1) throw new IllegalArgumentException("batchSize must be positive");
+        this.batchSize = batchSize;
+    }
+
+    // Idempotent on the server; done once per JVM.
+    static void ensureIndexes(MongoDatabase db) {
+        if (!indexed) {
+            db.getCollection(COLLECTION).createIndex(Indexes.ascending("username", "symbol"),
+                    new IndexOptions().unique(true).name("username_symbol"));
+            indexed = true;
+        }
+    }
+
+    @Override
+    public PortfolioData load(String username) {
+        PortfolioData data = loadHoldings(username);
+        data.getGoals().addAll(loadGoals(username));
+        return data;
+    }
+
+    // Streams the user's holdings in cursor batches of batchSize, reading
+    // only the fields the portfolio needs; the index serves the query.
+    @Override
+    public PortfolioData loadHoldings(String username) {
+        writes.flush(username);
+        MongoDatabase db = MongoDBConnection.getDatabase();
+        ensureIndexes(db);
+
+        PortfolioData data = new PortfolioData();
+        try (MongoCursor<Document> cursor = db.getCollection(COLLECTION)
+                .find(new Document("username", username))
+                .projection(HOLDING_FIELDS)
+                .batchSize(batchSize)
+                .iterator()) {
+            while (cursor.hasNext()) {
+                Document d = cursor.next();
+                Number sharesNumber = d.get("shares", Number.class);
+                Number number = d.get("value", Number.class);
+                data.addHolding(d.getString("symbol"),
+                        (sharesNumber != null) ? sharesNumber.doubleValue() : 0,
+                        (number != null) ? number.doubleValue() : 0.0);
+            }
+        }
+        return data;
+    }
+
+    @Override
+    public List<PortfolioData.GoalEntry> loadGoals(String username) {
+        writes.flush(username);
+        Document portfolioDoc = MongoDBConnection.getDatabase().getCollection("portfolio")
+                .find(new Document("username", username))
+                .projection(GOAL_FIELDS)
+                .first();
+        return MongoPortfolioRepository.goalEntries(portfolioDoc);
+    }
+
+    // Called by the write-behind queue with one user's coalesced batch.
+    // Holdings in a batch are distinct, so their writes can go unordered.
+    @Override
+    public void write(String username, Map<String, Document> upserts, List<String> deletes, List<Document> goals) {
+        MongoDatabase db = MongoDBConnection.getDatabase();
+        ensureIndexes(db);
+        List<WriteModel<Document>> models = new java.util.ArrayList<>(upserts.size() + 1);
+        UpdateOptions upsert = new UpdateOptions().upsert(true);
+        for (Map.Entry<String, Document> entry : upserts.entrySet()) {
+            Document holding = entry.getValue();
+            models.add(new UpdateOneModel<>(
+                    new Document("username", username).append("symbol", entry.getKey()),
+                    new Document("$set", new Document("shares", holding.get("shares"))
+                            .append("value", holding.get("value"))),
+                    upsert));
+        }
+        if (!deletes.isEmpty()) {
+            models.add(new DeleteManyModel<>(new Document("username", username)
+                    .append("symbol", new Document("$in", deletes))));
+        }
+        if (!models.isEmpty()) {
+            db.getCollection(COLLECTION).bulkWrite(models, new BulkWriteOptions().ordered(false));
+        }
+        if (!goals.isEmpty()) {
+            db.getCollection("portfolio").updateOne(new Document("username", username),
+                    new Document("$push", new Document("goals", new Document("$each", goals))),
+                    upsert);
+        }
+    }
+
+    @Override
+    public CompletableFuture<Void> addHolding(String username, String symbol, double shares, double value) {
+        return writes.addHolding(username, symbol, shares, value);
+    }
+
+    @Override
+    public CompletableFuture<Void> setHolding(String username, String symbol, double shares, double value) {
+        return writes.setHolding(username, symbol, shares, value);
+    }
+
+    @Override
+    public CompletableFuture<Void> putHoldings(String username, List<PortfolioData.Holding> added,
+                                               List<PortfolioData.Holding> changed) {
+        return writes.putHoldings(username, added, changed);
+    }
+
+    @Override
+    public CompletableFuture<Void> removeHolding(String username, String symbol) {
+        return writes.removeHolding(username, symbol);
+    }
+
+    @Override
+    public CompletableFuture<Void> addGoal(String username, String name, double targetValue, String deadline) {
+        Document goalDoc = new Document("name", name)
+                .append("targetValue", targetValue)
+                .append("deadline", deadline);
+        return writes.addGoal(username, goalDoc);
+    }
+
+    @Override
+    public boolean consumeStale(String username) {
+        return false;
+    }
+
+    @Override
+    public void flush(String username) {
+        writes.flush(username);
+    }
+
+    @Override
+    public void flushAll() {
+        writes.flushAll();
+    }
+
+    @Override
+    public void close() {
+        writes.shutdown();
+    }
+}
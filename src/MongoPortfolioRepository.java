@@ -0,0 +1,159 @@
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import com.mongodb.client.FindIterable;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.UpdateOptions;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+
+// One document per user in the "portfolio" collection, written through a
+// WriteBehindQueue.
+public class MongoPortfolioRepository implements PortfolioRepository {
+    private static final Bson HOLDING_FIELDS = Projections.fields(
+            Projections.include("stocks.symbol", "stocks.shares", "stocks.value", "version"),
+            Projections.excludeId());
+    private static final Bson GOAL_FIELDS = Projections.fields(
+            Projections.include("goals"), Projections.excludeId());
+
+    private final WriteBehindQueue writes = new WriteBehindQueue();
+
+    // The whole document in one read, so the holdings and goals come from
+    // the same version of it. Stale reloads go through here.
+    @Override
+    public PortfolioData load(String username) {
+        Document portfolioDoc = fetch(username, null);
+        PortfolioData data = holdings(portfolioDoc);
+        data.getGoals().addAll(goalEntries(portfolioDoc));
+        return data;
+    }
+
+    // Reads only the stocks array and the version; goals are fetched when
+    // first needed.
+    @Override
+    public PortfolioData loadHoldings(String username) {
+        return holdings(fetch(username, HOLDING_FIELDS));
+    }
+
+    // Reads the user's document, or the projected fields of it, and records
+    // its version for the write-behind guard.
+    private Document fetch(String username, Bson projection) {
+        writes.flush(username);
+        MongoDatabase db = MongoDBConnection.getDatabase();
+        MongoCollection<Document> portfolioCollection = db.getCollection("portfolio");
+        Document query = new Document("username", username);
+        FindIterable<Document> found = portfolioCollection.find(query);
+        Document portfolioDoc = (projection != null ? found.projection(projection) : found).first();
+
+        // Writes are guarded by the document's version, so make sure there
+        // is a document and that it carries one.
+        long version = 0;
+        if (portfolioDoc == null) {
+            portfolioCollection.updateOne(query,
+                    new Document("$setOnInsert", new Document("stocks", new java.util.ArrayList<>())
+                            .append("goals", new java.util.ArrayList<>())
+                            .append("version", 0L)),
+                    new UpdateOptions().upsert(true));
+        } else if (portfolioDoc.get("version", Number.class) == null) {
+            portfolioCollection.updateOne(
+                    new Document("username", username).append("version", new Document("$exists", false)),
+                    new Document("$set", new Document("version", 0L)));
+        } else {
+            version = portfolioDoc.get("version", Number.class).longValue();
+        }
+        writes.setVersion(username, version);
+        return portfolioDoc;
+    }
+
+    private static PortfolioData holdings(Document portfolioDoc) {
+        PortfolioData data = new PortfolioData();
+        if (portfolioDoc != null && portfolioDoc.containsKey("stocks")) {
+            @SuppressWarnings("unchecked")
+            List<Document> stockDocs = (List<Document>) portfolioDoc.get("stocks");
+            for (Document d : stockDocs) {
+                Number sharesNumber = d.get("shares", Number.class);
+                Number number = d.get("value", Number.class);
+                data.addHolding(d.getString("symbol"),
+                        (sharesNumber != null) ? sharesNumber.intValue() : 0,
+                        (number != null) ? number.doubleValue() : 0.0);
+            }
+        }
+        return data;
+    }
+
+    @Override
+    public List<PortfolioData.GoalEntry> loadGoals(String username) {
+        writes.flush(username);
+        Document portfolioDoc = MongoDBConnection.getDatabase().getCollection("portfolio")
+                .find(new Document("username", username))
+                .projection(GOAL_FIELDS)
+                .first();
+        return goalEntries(portfolioDoc);
+    }
+
+    // Shared with MongoHoldingsRepository, which keeps goals in the same place.
+    static List<PortfolioData.GoalEntry> goalEntries(Document portfolioDoc) {
+        PortfolioData data = new PortfolioData();
+        if (portfolioDoc != null && portfolioDoc.containsKey("goals")) {
+            @SuppressWarnings("unchecked")
+            List<Document> goalDocs = (List<Document>) portfolioDoc.get("goals");
+            for (Document d : goalDocs) {
+                Number targetNum = d.get("targetValue", Number.class);
+                data.addGoal(d.getString("name"),
+                        (targetNum != null) ? targetNum.doubleValue() : 0.0,
+                        d.getString("deadline"));
+            }
+        }
+        return data.getGoals();
+    }
+
+    @Override
+    public CompletableFuture<Void> addHolding(String username, String symbol, double shares, double value) {
+        return writes.addHolding(username, symbol, shares, value);
+    }
+
+    @Override
+    public CompletableFuture<Void> setHolding(String username, String symbol, double shares, double value) {
+        return writes.setHolding(username, symbol, shares, value);
+    }
+
+    @Override
+    public CompletableFuture<Void> putHoldings(String username, List<PortfolioData.Holding> added,
+                                               List<PortfolioData.Holding> changed) {
+        return writes.putHoldings(username, added, changed);
+    }
+
+    @Override
+    public CompletableFuture<Void> removeHolding(String username, String symbol) {
+        return writes.removeHolding(username, symbol);
+    }
+
+    @Override
+    public CompletableFuture<Void> addGoal(String username, String name, double targetValue, String deadline) {
+        Document goalDoc = new Document("name", name)
+                .append("targetValue", targetValue)
+                .append("deadline", deadline);
+        return writes.addGoal(username, goalDoc);
+    }
+
+    @Override
+    public boolean consumeStale(String username) {
+        return writes.consumeStale(username);
+    }
+
+    @Override
+    public void flush(String username) {
+        writes.flush(username);
+    }
+
+    @Override
+    public void flushAll() {
+        writes.flushAll();
+    }
+
+    @Override
+    public void close() {
+        writes.shutdown();
+    }
+}
@@ -1,3 +1,13 @@
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.IntConsumer;
 import javafx.application.Application;
 
 import javafx.application.Platform;
@@ -6,35 +16,54 @@ import javafx.scene.control.Tab;
 import javafx.scene.control.TabPane;
 import javafx.stage.Stage;
 import javafx.scene.control.Button;
+import javafx.scene.control.Label;
 import javafx.scene.layout.BorderPane;
 
 
 public class PPMSApp extends Application {
+    // The panels and the correlation sample are refreshed at most this often.
+    private static final long REFRESH_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
     private PortfolioManager portfolio = new PortfolioManager();
-    private final HeapADT<Asset> heap = new MaxHeapImpl<>();
-    private final GraphADT graph = new AdjacencyListGraph();
+    private final AsyncPortfolioService service =
+            new AsyncPortfolioService(portfolio, IoExecutor.shared(), Platform::runLater);
+    // The heap orders holdings by the volatility read at the last refresh,
+    // never the live value, which simulator threads change mid-sift.
+    private final Map<Asset, Double> riskKeys = new HashMap<>();
+    private final IndexedHeapADT<Asset> heap = new IndexedMaxHeap<>(Comparator.comparingDouble(this::riskKey));
+    private final CorrelationEngine correlations = new CorrelationEngine();
     private PriceSimulator simulator;
+    private final TickEventBus ticks = new TickEventBus();
+    private TickRecorder recorder;
+    private TickReplay replay;
+    private final Label alertLabel = new Label();
     private DashboardPanel dashboardPanel;
+    private IntConsumer ioListener;
+    private String loggedInUser;
+    private final AtomicBoolean shutDown = new AtomicBoolean();
+    private Thread shutdownHook;
 
     @Override
     public void start(Stage primaryStage) {
 
-        String loggedInUser = Session.getCurrentUser();
+        loggedInUser = Session.getCurrentUser();
         System.out.println("Logged in as: " + loggedInUser);
         
         
-        portfolio.loadPortfolioForUser(loggedInUser);
+        portfolio.loadCachedPortfolio(loggedInUser);
+        syncRiskHeap();
+        correlations.sample(portfolio.getAssets());
 
         
         TabPane tabPane = new TabPane();
         simulator = new PriceSimulator(portfolio);
 
        
-        dashboardPanel = new DashboardPanel(portfolio, this::updateAllPanels);
-        ManageAssetsPanel managePanel = new ManageAssetsPanel(portfolio, heap, this::updateAllPanels);
-        VisualizePanel visualizePanel = new VisualizePanel(portfolio, heap, graph);
-        GoalsPanel goalsPanel = new GoalsPanel(portfolio, this::updateAllPanels);
-        ReportsPanel reportsPanel = new ReportsPanel(portfolio, this::updateAllPanels);
+        dashboardPanel = new DashboardPanel(portfolio, ticks, this::updateAllPanels);
+        ManageAssetsPanel managePanel = new ManageAssetsPanel(portfolio, service, heap, this::updateAllPanels);
+        VisualizePanel visualizePanel = new VisualizePanel(portfolio, heap, correlations);
+        GoalsPanel goalsPanel = new GoalsPanel(portfolio, service, this::updateAllPanels);
+        ReportsPanel reportsPanel = new ReportsPanel(portfolio, service, this::updateAllPanels);
         WatchlistPanel watchlistPanel = new WatchlistPanel(portfolio, this::updateAllPanels);
 
        
@@ -44,7 +73,7 @@ public class PPMSApp extends Application {
         Tab goalsTab = new Tab("Goals", goalsPanel.getPane());
         Tab reportsTab = new Tab("Reports", reportsPanel.getPane());
         Tab watchlistTab = new Tab("Watchlist", watchlistPanel.getPane());
-        Tab livePriceTab = new Tab("Live Price", new LivePricePanel().getPane());
+        Tab livePriceTab = new Tab("Live Price", new LivePricePanel(ticks).getPane());
       
 
 
@@ -53,6 +82,7 @@ public class PPMSApp extends Application {
         Button logoutButton = new Button("Logout");
         logoutButton.setOnAction(e -> {
             
+            shutdown();
             Session.setCurrentUser(null);
             primaryStage.close();
             new LoginPage().start(new Stage());
@@ -60,6 +90,8 @@ public class PPMSApp extends Application {
 
         
         BorderPane topBar = new BorderPane();
+        topBar.setLeft(buildIoStatus());
+        topBar.setCenter(alertLabel);
         topBar.setRight(logoutButton);
 
        
@@ -70,16 +102,225 @@ public class PPMSApp extends Application {
         Scene scene = new Scene(mainLayout, 1000, 700);
         primaryStage.setTitle("Advanced PPMS");
         primaryStage.setScene(scene);
+        // LoginPage calls start() directly, so JavaFX never calls stop()
+        // for this window; closing it, or the JVM exiting, must still write
+        // out what is buffered on the daemon I/O threads.
+        primaryStage.setOnCloseRequest(e -> shutdown());
+        shutdownHook = new Thread(this::shutdown, "ppms-shutdown");
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
         primaryStage.show();
 
-        simulator.startSimulation(() -> Platform.runLater(this::updateAllPanels));
+        refreshFromRepository(loggedInUser);
+
+        startTicks();
+    }
+
+    @Override
+    public void stop() {
+        shutdown();
+    }
+
+    // Stops the price feeds, drains the write lane, flushes the repository
+    // and saves the warm cache. Runs once, from whichever of Logout, the
+    // window closing, stop() or the shutdown hook gets there first.
+    private void shutdown() {
+        if (!shutDown.compareAndSet(false, true)) {
+            return;
+        }
+        if (shutdownHook != null && Thread.currentThread() != shutdownHook) {
+            try {
+                Runtime.getRuntime().removeShutdownHook(shutdownHook);
+            } catch (IllegalStateException e) {
+                // Already exiting; the hook is running or about to.
+            }
+        }
+        if (ioListener != null) {
+            IoExecutor.shared().removeListener(ioListener);
+        }
+        if (simulator != null) {
+            simulator.stopSimulation();
+        }
+        stopTicks();
+        if (loggedInUser != null) {
+            portfolio.saveCachedPortfolio(loggedInUser);
+        }
+        portfolio.close();
+        MongoDBConnection.shutdown();
+    }
+
+    // Simulated, live and replayed ticks all reach the panels through the
+    // bus. Each consumer has its own thread, so a slow redraw only makes the
+    // UI consumer's batches bigger; the simulator never waits for it. The
+    // consumers only read the portfolio's published snapshots.
+    // ppms.ticks.record appends every tick to a file and ppms.ticks.replay
+    // plays one back, at ppms.ticks.replaySpeed times the recorded pace.
+    private void startTicks() {
+        long maxPark = TimeUnit.MILLISECONDS.toNanos(10);
+        long[] lastSample = {0};
+        ticks.subscribe("analytics", (symbol, price, time, source, endOfBatch) -> {
+            if (endOfBatch) {
+                lastSample[0] = pace(lastSample[0]);
+                correlations.sample(portfolio.getAssetsSnapshot());
+            }
+        }, TickEventBus.WaitStrategy.parking(maxPark));
+
+        // Live and replayed prices move the holdings the way simulated ones
+        // do; the simulator has already applied its own.
+        AtomicBoolean scheduled = new AtomicBoolean();
+        long[] lastRefresh = {0};
+        ticks.subscribe("ui", (symbol, price, time, source, endOfBatch) -> {
+            if (source != TickEventBus.SOURCE_SIMULATOR) {
+                applyQuote(symbol, price, time);
+            }
+            if (endOfBatch && !scheduled.get()) {
+                lastRefresh[0] = pace(lastRefresh[0]);
+                scheduled.set(true);
+                Platform.runLater(() -> {
+                    scheduled.set(false);
+                    updateAllPanels();
+                });
+            }
+        }, TickEventBus.WaitStrategy.parking(maxPark));
+
+        ticks.subscribe("alerts", new PriceAlerts(message -> Platform.runLater(() -> alertLabel.setText(message))),
+                TickEventBus.WaitStrategy.parking(maxPark));
+
+        String recordTo = System.getProperty("ppms.ticks.record");
+        if (recordTo != null) {
+            try {
+                recorder = new TickRecorder(Paths.get(recordTo));
+                ticks.subscribe("recorder", recorder, TickEventBus.WaitStrategy.parking(maxPark));
+            } catch (IOException e) {
+                System.err.println("Could not record ticks to " + recordTo + ": " + e.getMessage());
+            }
+        }
+        String replayFrom = System.getProperty("ppms.ticks.replay");
+        if (replayFrom != null) {
+            replay = new TickReplay(ticks, Paths.get(replayFrom),
+                    Double.parseDouble(System.getProperty("ppms.ticks.replaySpeed", "1")));
+            replay.start();
+        }
+
+        simulator.publishTo(ticks);
+        simulator.startSimulation();
+    }
+
+    private void stopTicks() {
+        if (replay != null) {
+            replay.stop();
+        }
+        ticks.close();
+        if (recorder != null) {
+            try {
+                recorder.close();
+            } catch (IOException e) {
+                System.err.println("Could not close tick recording: " + e.getMessage());
+            }
+        }
+    }
+
+    // Holds the calling consumer until REFRESH_NANOS after the last refresh;
+    // ticks published meanwhile join its next batch. Returns the new time.
+    private static long pace(long last) {
+        long wait;
+        while ((wait = last + REFRESH_NANOS - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(wait);
+        }
+        return System.nanoTime();
+    }
+
+    // Runs on the "ui" consumer thread, so it looks the symbol up in the
+    // snapshot the FX thread publishes rather than the live holdings.
+    private void applyQuote(String symbol, double price, long time) {
+        Asset asset = portfolio.findQuoteTarget(symbol);
+        if (asset != null) {
+            asset.setCurrentPrice(price, time);
+        }
+    }
+
+    // The UI is already showing the cached snapshot, or nothing on a cold
+    // start; fetch the stored portfolio in the background and merge it in
+    // when it arrives.
+    private void refreshFromRepository(String username) {
+        service.load(username).whenComplete((v, error) -> {
+            if (error != null) {
+                System.err.println("Could not refresh portfolio: " + error.getMessage());
+            } else {
+                updateAllPanels();
+            }
+        });
+    }
+
+    // Shows how many repository and network calls are outstanding. Updates
+    // from I/O threads are folded into one pending runLater.
+    private Label buildIoStatus() {
+        Label status = new Label();
+        AtomicBoolean scheduled = new AtomicBoolean();
+        ioListener = count -> {
+            if (scheduled.compareAndSet(false, true)) {
+                Platform.runLater(() -> {
+                    scheduled.set(false);
+                    int inFlight = IoExecutor.shared().inFlight();
+                    status.setText(inFlight == 0 ? "" : inFlight + " I/O operation(s) in flight");
+                });
+            }
+        };
+        IoExecutor.shared().addListener(ioListener);
+        return status;
     }
 
     private void updateAllPanels() {
+        CompletableFuture<Void> reload = service.reloadIfStale();
+        if (!reload.isDone()) {
+            reload.thenRun(this::updateAllPanels);
+        }
+        // The dashboard shows goal progress, so goals are fetched once it
+        // first draws, behind the holdings.
+        if (!portfolio.goalsLoaded()) {
+            CompletableFuture<Void> goals = service.loadGoals();
+            if (!goals.isDone()) {
+                goals.thenRun(this::updateAllPanels);
+            }
+        }
+        syncRiskHeap();
         dashboardPanel.updateDashboard();
        
     }
 
+    // Every tick moves every holding's volatility, so the keys are read
+    // once per refresh and the whole heap is re-heapified from them. If the
+    // holdings changed (add, delete, or a reload that replaced the objects)
+    // the heap is rebuilt instead.
+    private void syncRiskHeap() {
+        ListADT<Asset> assets = portfolio.getAssets();
+        riskKeys.clear();
+        boolean sameHoldings = heap.size() == assets.size();
+        for (int i = 0; i < assets.size(); i++) {
+            Asset asset = assets.get(i);
+            riskKeys.put(asset, asset.getVolatility());
+            sameHoldings = sameHoldings && heap.contains(asset);
+        }
+        if (sameHoldings) {
+            heap.updateAll();
+            return;
+        }
+        heap.clear();
+        for (int i = 0; i < assets.size(); i++) {
+            heap.add(assets.get(i));
+        }
+    }
+
+    // Holdings added since the last refresh are keyed on first comparison
+    // and keep that key until the next one. Only used on the FX thread.
+    private double riskKey(Asset asset) {
+        Double key = riskKeys.get(asset);
+        if (key == null) {
+            key = asset.getVolatility();
+            riskKeys.put(asset, key);
+        }
+        return key;
+    }
+
     public static void main(String[] args) {
         launch(args);
     }
@@ -0,0 +1,48 @@
+import java.util.List;
+
+// Stored form of one user's portfolio, as a repository reads it: holdings
+// with their last saved price and goals with their ISO-8601 deadline.
+public class PortfolioData {
+    private final List<Holding> holdings = new java.util.ArrayList<>();
+    private final List<GoalEntry> goals = new java.util.ArrayList<>();
+
+    public List<Holding> getHoldings() {
+        return holdings;
+    }
+
+    public List<GoalEntry> getGoals() {
+        return goals;
+    }
+
+    public void addHolding(String symbol, double shares, double value) {
+        holdings.add(new Holding(symbol, shares, value));
+    }
+
+    public void addGoal(String name, double targetValue, String deadline) {
+        goals.add(new GoalEntry(name, targetValue, deadline));
+    }
+
+    public static class Holding {
+        public final String symbol;
+        public final double shares;
+        public final double value;
+
+        public Holding(String symbol, double shares, double value) {
+            this.symbol = symbol;
+            this.shares = shares;
+            this.value = value;
+        }
+    }
+
+    public static class GoalEntry {
+        public final String name;
+        public final double targetValue;
+        public final String deadline;
+
+        public GoalEntry(String name, double targetValue, String deadline) {
+            this.name = name;
+            this.targetValue = targetValue;
+            this.deadline = deadline;
+        }
+    }
+}
@@ -1,80 +1,204 @@
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.Date;
-import java.util.List;
-import com.mongodb.client.MongoCollection;
-import com.mongodb.client.MongoDatabase;
-import com.mongodb.client.model.UpdateOptions;
-import org.bson.Document;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 public class PortfolioManager {
     private ListADT<Asset> assets = new ArrayListImpl<>();
     private ListADT<Goal> goals = new ArrayListImpl<>();
     private ListADT<Asset> watchlist = new ArrayListImpl<>();
+    private final Map<String, Integer> assetIndex = new HashMap<>();
+    private final Map<String, Integer> watchlistIndex = new HashMap<>();
+    private final PortfolioRepository repository;
+    // Repository calls can block (an inline flush, an fsync), so they run on
+    // the I/O pool; mutations update memory first and return the write.
+    private final IoExecutor.Lane writes;
+    // Null for the desktop app, which follows Session; set for managers a
+    // PortfolioService holds for one user each.
+    private final String username;
+    // Goals are read from the repository the first time they are needed.
+    private boolean goalsLoaded;
+    // Copies for threads other than the FX thread (tick consumers, the
+    // simulator), which must not read the lists and indexes above while
+    // they change. Replaced, never modified, after every change.
+    private volatile ListADT<Asset> assetsSnapshot = new ArrayListImpl<>();
+    private volatile ListADT<Asset> watchlistSnapshot = new ArrayListImpl<>();
+    private volatile Map<String, Asset> quoteTargets = Map.of();
+
+    public PortfolioManager() {
+        this(PortfolioRepository.fromSystemProperties());
+    }
+
+    public PortfolioManager(PortfolioRepository repository) {
+        this(repository, IoExecutor.shared());
+    }
+
+    public PortfolioManager(PortfolioRepository repository, IoExecutor io) {
+        this(repository, io, null);
+    }
+
+    public PortfolioManager(PortfolioRepository repository, IoExecutor io, String username) {
+        this.repository = repository;
+        this.writes = io.newLane();
+        this.username = username;
+    }
+
+    // The user whose portfolio this is.
+    public String getUsername() {
+        return username != null ? username : Session.getCurrentUser();
+    }
 
     public void loadPortfolioForUser(String username) {
-        MongoDatabase db = MongoDBConnection.getDatabase();
-        MongoCollection<Document> portfolioCollection = db.getCollection("portfolio");
-        Document query = new Document("username", username);
-        Document portfolioDoc = portfolioCollection.find(query).first();
+        applyPortfolio(fetchPortfolio(username));
+    }
+
+    // Reads the stored portfolio without touching the in-memory one, so it
+    // can run off the UI thread; applyPortfolio then installs the result.
+    public PortfolioData fetchPortfolio(String username) {
+        return repository.load(username);
+    }
+
+    // Holdings only, projected so the goals are not transferred.
+    public PortfolioData fetchHoldings(String username) {
+        return repository.loadHoldings(username);
+    }
+
+    public java.util.List<PortfolioData.GoalEntry> fetchGoals(String username) {
+        return repository.loadGoals(username);
+    }
+
+    public void applyPortfolio(PortfolioData data) {
+        applyHoldings(data);
+        applyGoals(data.getGoals());
+    }
+
+    // Holdings already in memory (for example from the warm cache) keep
+    // their Asset, price and history; only the stored quantity is applied.
+    // Goals are left as they are. Legacy documents can list a symbol twice;
+    // as in HoldingsMigration, the first entry wins.
+    public void applyHoldings(PortfolioData data) {
+        Map<String, Asset> previous = new HashMap<>();
+        for (int i = 0; i < assets.size(); i++) {
+            previous.put(assets.get(i).getName(), assets.get(i));
+        }
 
         assets.clear();
-        goals.clear();
+        assetIndex.clear();
 
-        if (portfolioDoc != null && portfolioDoc.containsKey("stocks")) {
-            @SuppressWarnings("unchecked")
-            List<Document> stockDocs = (List<Document>) portfolioDoc.get("stocks");
-            for (Document d : stockDocs) {
-                String symbol = d.getString("symbol");
-                Number sharesNumber = d.get("shares", Number.class);
-                int shares = (sharesNumber != null) ? sharesNumber.intValue() : 0;
-                Number number = d.get("value", Number.class);
-                double value = (number != null) ? number.doubleValue() : 0.0;
-                assets.add(new Asset(symbol, "Stock", value, shares, new Date()));
+        for (PortfolioData.Holding holding : data.getHoldings()) {
+            if (assetIndex.containsKey(holding.symbol)) {
+                continue;
             }
+            Asset asset = previous.get(holding.symbol);
+            if (asset == null) {
+                asset = new Asset(holding.symbol, "Stock", holding.value, holding.shares, new Date());
+            } else {
+                asset.setQuantity(holding.shares);
+            }
+            assets.add(asset);
+            assetIndex.put(holding.symbol, assets.size() - 1);
+        }
+        publish();
+    }
+
+    // Deadlines stay as text until a view asks for them.
+    public void applyGoals(java.util.List<PortfolioData.GoalEntry> entries) {
+        goals.clear();
+        for (PortfolioData.GoalEntry entry : entries) {
+            goals.add(new Goal(entry.name, entry.targetValue, entry.deadline));
+        }
+        goalsLoaded = true;
+    }
+
+    public boolean goalsLoaded() {
+        return goalsLoaded;
+    }
+
+    // Installs the user's last saved snapshot, if any, so the UI has data
+    // (including price history) before the repository answers.
+    public boolean loadCachedPortfolio(String username) {
+        Path path = cachePath(username);
+        if (!Files.exists(path)) {
+            return false;
+        }
+        try {
+            installSnapshot(PortfolioSnapshot.read(path));
+            return true;
+        } catch (IOException e) {
+            System.err.println("Ignoring unreadable portfolio cache " + path + ": " + e.getMessage());
+            return false;
         }
+    }
+
+    public void saveCachedPortfolio(String username) {
+        try {
+            saveToFile(cachePath(username).toString());
+        } catch (IOException e) {
+            System.err.println("Could not write portfolio cache: " + e.getMessage());
+        }
+    }
 
-        if (portfolioDoc != null && portfolioDoc.containsKey("goals")) {
-            @SuppressWarnings("unchecked")
-            List<Document> goalDocs = (List<Document>) portfolioDoc.get("goals");
-            for (Document d : goalDocs) {
-                String goalName = d.getString("name");
-                Number targetNum = d.get("targetValue", Number.class);
-                double targetValue = (targetNum != null) ? targetNum.doubleValue() : 0.0;
-                String deadlineStr = d.getString("deadline");
-                Date deadlineDate = null;
-                try {
-                    deadlineDate = Date.from(java.time.Instant.parse(deadlineStr));
-                } catch (Exception e) {
-                    System.err.println("Error parsing deadline: " + e.getMessage());
-                    deadlineDate = new Date();
-                }
-                goals.add(new Goal(goalName, targetValue, deadlineDate));
+    private static Path cachePath(String username) {
+        Path dir = Paths.get(System.getProperty("ppms.cache.dir",
+                System.getProperty("user.home") + "/.ppms/cache"));
+        return dir.resolve(JournalPortfolioRepository.directoryName(username) + ".snapshot");
+    }
+
+    private void installSnapshot(PortfolioSnapshot snapshot) {
+        assets.clear();
+        assetIndex.clear();
+        goals.clear();
+        for (int i = 0; i < snapshot.holdingCount(); i++) {
+            if (assetIndex.containsKey(snapshot.symbols[i])) {
+                continue;
             }
+            assets.add(snapshot.toAsset(i));
+            assetIndex.put(snapshot.symbols[i], assets.size() - 1);
         }
+        publish();
+        for (int i = 0; i < snapshot.goalCount(); i++) {
+            goals.add(snapshot.toGoal(i));
+        }
+        goalsLoaded = true;
     }
 
     public ListADT<Asset> getAssets() {
         return assets;
     }
 
-    public void deleteAsset(String assetName) {
-        for (int i = 0; i < assets.size(); i++) {
-            if (assets.get(i).getName().equals(assetName)) {
-                assets.remove(assets.get(i));
-                break;
-            }
-        }
-        
-        String currentUser = Session.getCurrentUser();
-        MongoDatabase db = MongoDBConnection.getDatabase();
-        MongoCollection<Document> portfolioCollection = db.getCollection("portfolio");
-        
-        portfolioCollection.updateOne(
-            new Document("username", currentUser),
-            new Document("$pull", new Document("stocks", new Document("symbol", assetName)))
-        );
-        
-        loadPortfolioForUser(currentUser);
+    public Asset findAsset(String symbol) {
+        Integer slot = assetIndex.get(symbol);
+        return slot == null ? null : assets.get(slot);
+    }
+
+    public Asset findWatchlistAsset(String symbol) {
+        Integer slot = watchlistIndex.get(symbol);
+        return slot == null ? null : watchlist.get(slot);
+    }
+
+    // The snapshot accessors below are safe from any thread.
+    public ListADT<Asset> getAssetsSnapshot() {
+        return assetsSnapshot;
+    }
+
+    public ListADT<Asset> getWatchlistSnapshot() {
+        return watchlistSnapshot;
+    }
+
+    // The holding with the symbol, else the watchlist entry, else null.
+    public Asset findQuoteTarget(String symbol) {
+        return quoteTargets.get(symbol);
+    }
+
+    public CompletableFuture<Void> deleteAsset(String assetName) {
+        removeIndexed(assets, assetIndex, assetName);
+        publish();
+        String currentUser = getUsername();
+        return writes.submit(() -> repository.removeHolding(currentUser, assetName));
     }
 
     public double getTotalValue() {
@@ -85,115 +209,274 @@ public class PortfolioManager {
         return total;
     }
 
+    // Imports a snapshot written by saveToFile, or a .csv file, into the
+    // current portfolio. Holdings replace any held under the same symbol;
+    // goals are added.
     public void loadFromFile(String filename) throws IOException {
-        System.out.println("loadFromFile not implemented");
+        if (filename.toLowerCase().endsWith(".csv")) {
+            importCsv(CsvImporter.read(Paths.get(filename)));
+            return;
+        }
+        PortfolioSnapshot snapshot = PortfolioSnapshot.read(Paths.get(filename));
+        java.util.List<Asset> imported = new java.util.ArrayList<>(snapshot.holdingCount());
+        for (int i = 0; i < snapshot.holdingCount(); i++) {
+            imported.add(snapshot.toAsset(i));
+        }
+        persistImported(imported, installAssets(imported));
+        for (int i = 0; i < snapshot.goalCount(); i++) {
+            Goal goal = snapshot.toGoal(i);
+            addGoal(goal.getName(), goal.getTargetValue(), goal.getDeadline());
+        }
     }
 
-    public void addGoal(String name, double target, Date deadline) {
+    // Tick rows are appended to the history of the holding with that symbol,
+    // oldest first; ticks for symbols not held are dropped.
+    // The holdings are written once, after the ticks, with their last price.
+    private void importCsv(CsvImporter.Result csv) {
+        java.util.List<Asset> imported = new java.util.ArrayList<>(csv.holdingCount());
+        for (int i = 0; i < csv.holdingCount(); i++) {
+            imported.add(new Asset(csv.holdingName(i), csv.holdingType(i),
+                    csv.holdingPrice(i), csv.holdingQuantity(i), new Date()));
+        }
+        java.util.Set<String> added = installAssets(imported);
+        for (int i = 0; i < csv.goalCount(); i++) {
+            addGoal(csv.goalName(i), csv.goalTarget(i), parseCsvDeadline(csv.goalDeadline(i)));
+        }
+        int[] order = csv.tickOrder();
+        Asset asset = null;
+        String symbol = null;
+        for (int k = 0; k < order.length; k++) {
+            String next = csv.tickSymbol(order[k]);
+            if (!next.equals(symbol)) {
+                symbol = next;
+                asset = findAsset(symbol);
+            }
+            if (asset != null) {
+                asset.setCurrentPrice(csv.tickPrice(order[k]), csv.tickTime(order[k]));
+            }
+        }
+        persistImported(imported, added);
+    }
+
+    // Accepts ISO-8601 instants and the Date.toString() form ReportsPanel exports.
+    private static Date parseCsvDeadline(String text) {
+        try {
+            return Date.from(java.time.Instant.parse(text));
+        } catch (Exception e) {
+            try {
+                return new java.text.SimpleDateFormat("EEE MMM dd HH:mm:ss zzz yyyy", java.util.Locale.US).parse(text);
+            } catch (java.text.ParseException pe) {
+                System.err.println("Error parsing deadline: " + pe.getMessage());
+                return new Date();
+            }
+        }
+    }
+
+    // Adds or replaces each imported holding in memory and publishes once,
+    // so an import is linear in its size. Returns the symbols that were not
+    // held before; a symbol listed twice keeps its last row.
+    private java.util.Set<String> installAssets(java.util.List<Asset> imported) {
+        java.util.Set<String> added = new java.util.HashSet<>();
+        for (Asset asset : imported) {
+            Integer slot = assetIndex.get(asset.getName());
+            if (slot == null) {
+                assets.add(asset);
+                assetIndex.put(asset.getName(), assets.size() - 1);
+                added.add(asset.getName());
+            } else {
+                assets.set(slot, asset);
+            }
+        }
+        publish();
+        return added;
+    }
+
+    // Sends the imported holdings, as they are now, in one lane write.
+    private CompletableFuture<Void> persistImported(java.util.List<Asset> imported, java.util.Set<String> added) {
+        java.util.List<PortfolioData.Holding> adds = new java.util.ArrayList<>();
+        java.util.List<PortfolioData.Holding> changes = new java.util.ArrayList<>();
+        java.util.Set<String> sent = new java.util.HashSet<>();
+        for (Asset row : imported) {
+            String symbol = row.getName();
+            if (!sent.add(symbol)) {
+                continue;
+            }
+            Asset asset = findAsset(symbol);
+            PortfolioData.Holding holding = new PortfolioData.Holding(symbol, asset.getQuantity(), asset.getCurrentPrice());
+            (added.contains(symbol) ? adds : changes).add(holding);
+        }
+        if (adds.isEmpty() && changes.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        String currentUser = getUsername();
+        return writes.submit(() -> repository.putHoldings(currentUser, adds, changes));
+    }
+
+    // Captures the holding's fields now, so the write sends what the user
+    // saw even if a tick moves the price before the I/O thread runs it.
+    private CompletableFuture<Void> persistHolding(String username, Asset asset, boolean added) {
+        String symbol = asset.getName();
+        double shares = asset.getQuantity();
+        double value = asset.getCurrentPrice();
+        if (added) {
+            return writes.submit(() -> repository.addHolding(username, symbol, shares, value));
+        }
+        return writes.submit(() -> repository.setHolding(username, symbol, shares, value));
+    }
+
+    public CompletableFuture<Void> addGoal(String name, double target, Date deadline) {
         Goal newGoal = new Goal(name, target, deadline);
-        goals.add(newGoal);
-        
-        MongoDatabase db = MongoDBConnection.getDatabase();
-        MongoCollection<Document> portfolioCollection = db.getCollection("portfolio");
-        
-        String deadlineISO = deadline.toInstant().toString();
-        
-        Document goalDoc = new Document("name", name)
-                .append("targetValue", target)
-                .append("deadline", deadlineISO);
-        
-        String currentUser = Session.getCurrentUser();
-        
-        UpdateOptions options = new UpdateOptions().upsert(true);
-        
-        portfolioCollection.updateOne(
-                new Document("username", currentUser),
-                new Document("$push", new Document("goals", goalDoc)),
-                options
-        );
+        getGoals().add(newGoal);
+
+        String currentUser = getUsername();
+        String iso = deadline.toInstant().toString();
+        return writes.submit(() -> repository.addGoal(currentUser, name, target, iso));
     }
 
+    // Reads the goals on first use. UI code should load them through
+    // AsyncPortfolioService.loadGoals() first so this does not block.
     public ListADT<Goal> getGoals() {
+        String currentUser = getUsername();
+        if (!goalsLoaded && currentUser != null) {
+            applyGoals(fetchGoals(currentUser));
+        }
         return goals;
     }
 
-    public void addAsset(Asset asset) {
+    public CompletableFuture<Void> addAsset(Asset asset) {
+        Asset existing = findAsset(asset.getName());
+        if (existing != null) {
+            return editAsset(existing, asset);
+        }
         assets.add(asset);
-        
-        MongoDatabase db = MongoDBConnection.getDatabase();
-        MongoCollection<Document> portfolioCollection = db.getCollection("portfolio");
-        
-        Document stockDoc = new Document("symbol", asset.getName())
-                .append("shares", asset.getQuantity())
-                .append("value", asset.getCurrentPrice());
-        
-        String currentUser = Session.getCurrentUser();
-        
-        UpdateOptions options = new UpdateOptions().upsert(true);
-        portfolioCollection.updateOne(
-                new Document("username", currentUser),
-                new Document("$push", new Document("stocks", stockDoc)),
-                options
-        );
-    }
-
-    public void editAsset(Asset oldAsset, Asset updatedAsset) {
-        String currentUser = Session.getCurrentUser();
-        MongoDatabase db = MongoDBConnection.getDatabase();
-        MongoCollection<Document> portfolioCollection = db.getCollection("portfolio");
-
-        UpdateOptions options = new UpdateOptions().upsert(true);
-
-        portfolioCollection.updateOne(
-            new Document("username", currentUser),
-            new Document("$pull", new Document("stocks", new Document("symbol", oldAsset.getName()))),
-            options
-        );
-
-        Document updatedAssetDoc = new Document("symbol", updatedAsset.getName())
-            .append("shares", updatedAsset.getQuantity())
-            .append("value", updatedAsset.getCurrentPrice());
-
-        portfolioCollection.updateOne(
-            new Document("username", currentUser),
-            new Document("$push", new Document("stocks", updatedAssetDoc)),
-            options
-        );
+        assetIndex.put(asset.getName(), assets.size() - 1);
+        publish();
+        return persistHolding(getUsername(), asset, true);
+    }
 
-        loadPortfolioForUser(currentUser);
+    // Applies the edit to the held Asset in place, keeping its price history,
+    // and sends only the changed fields.
+    public CompletableFuture<Void> editAsset(Asset oldAsset, Asset updatedAsset) {
+        if (!oldAsset.getName().equals(updatedAsset.getName())) {
+            CompletableFuture<Void> deleted = deleteAsset(oldAsset.getName());
+            return CompletableFuture.allOf(deleted, addAsset(updatedAsset));
+        }
+        oldAsset.setType(updatedAsset.getType());
+        oldAsset.setQuantity(updatedAsset.getQuantity());
+        if (oldAsset.getCurrentPrice() != updatedAsset.getCurrentPrice()) {
+            oldAsset.setCurrentPrice(updatedAsset.getCurrentPrice());
+        }
+        return persistHolding(getUsername(), oldAsset, false);
     }
 
-    public void removeAsset(String assetName) {
-        for (int i = 0; i < assets.size(); i++) {
-            if (assets.get(i).getName().equals(assetName)) {
-                assets.remove(assets.get(i));
-                break;
-            }
+    public CompletableFuture<Void> removeAsset(String assetName) {
+        return deleteAsset(assetName);
+    }
+
+    // In-memory only: used to undo an optimistic change whose write failed.
+    void restoreAsset(Asset asset) {
+        if (!assetIndex.containsKey(asset.getName())) {
+            assets.add(asset);
+            assetIndex.put(asset.getName(), assets.size() - 1);
+            publish();
+        }
+    }
+
+    void forgetAsset(String symbol) {
+        removeIndexed(assets, assetIndex, symbol);
+        publish();
+    }
+
+    void forgetGoal(Goal goal) {
+        goals.remove(goal);
+    }
+
+    // Reloads the current user's portfolio if a write found the stored
+    // document changed by someone else. Returns true if it reloaded.
+    public boolean reloadIfStale() {
+        String currentUser = getUsername();
+        if (currentUser == null || !consumeStale(currentUser)) {
+            return false;
         }
-        
-        String currentUser = Session.getCurrentUser();
-        MongoDatabase db = MongoDBConnection.getDatabase();
-        MongoCollection<Document> portfolioCollection = db.getCollection("portfolio");
-        
-        portfolioCollection.updateOne(
-            new Document("username", currentUser),
-            new Document("$pull", new Document("stocks", new Document("symbol", assetName)))
-        );
-        
         loadPortfolioForUser(currentUser);
+        return true;
+    }
+
+    // True once after a write found the user's stored portfolio changed.
+    public boolean consumeStale(String username) {
+        return repository.consumeStale(username);
+    }
+
+    // Writes any buffered mutations now; called before logout and on exit.
+    public void flush() {
+        writes.drain();
+        repository.flushAll();
     }
 
+    // Writes this user's buffered mutations, leaving other users' batches
+    // in a shared repository alone.
+    public void flushOwn() {
+        writes.drain();
+        String owner = getUsername();
+        if (owner != null) {
+            repository.flush(owner);
+        }
+    }
+
+    public void close() {
+        writes.drain();
+        repository.close();
+    }
+
+    // A symbol already watched is left as it is.
     public void addToWatchlist(Asset asset) {
+        if (watchlistIndex.containsKey(asset.getName())) {
+            return;
+        }
         watchlist.add(asset);
+        watchlistIndex.put(asset.getName(), watchlist.size() - 1);
+        publish();
     }
 
     public void removeFromWatchlist(String assetName) {
+        removeIndexed(watchlist, watchlistIndex, assetName);
+        publish();
+    }
+
+    private void publish() {
+        ListADT<Asset> held = new ArrayListImpl<>();
+        ListADT<Asset> watched = new ArrayListImpl<>();
+        Map<String, Asset> targets = new HashMap<>();
         for (int i = 0; i < watchlist.size(); i++) {
-            if (watchlist.get(i).getName().equals(assetName)) {
-                watchlist.remove(watchlist.get(i));
-                break;
+            watched.add(watchlist.get(i));
+            targets.put(watchlist.get(i).getName(), watchlist.get(i));
+        }
+        for (int i = 0; i < assets.size(); i++) {
+            held.add(assets.get(i));
+            targets.put(assets.get(i).getName(), assets.get(i));
+        }
+        assetsSnapshot = held;
+        watchlistSnapshot = watched;
+        quoteTargets = Map.copyOf(targets);
+    }
+
+    // Swap-removes the slot recorded for the symbol and re-points the index
+    // entry of the element that was moved into the hole.
+    private Asset removeIndexed(ListADT<Asset> list, Map<String, Integer> index, String symbol) {
+        Integer slot = index.remove(symbol);
+        if (slot == null) {
+            return null;
+        }
+        int last = list.size() - 1;
+        Asset removed = list.swapRemove(slot);
+        if (slot != last) {
+            String moved = list.get(slot).getName();
+            Integer movedSlot = index.get(moved);
+            if (movedSlot != null && movedSlot == last) {
+                index.put(moved, slot);
             }
         }
+        return removed;
     }
 
     public ListADT<Asset> getWatchlist() {
@@ -204,7 +487,9 @@ public class PortfolioManager {
         System.out.println("rebalancePortfolio not implemented");
     }
 
+    // Writes holdings, their price histories and goals as a PortfolioSnapshot.
+    // -Dppms.snapshot.compress=true deflates each block.
     public void saveToFile(String filename) throws IOException {
-        System.out.println("saveToFile not implemented");
+        PortfolioSnapshot.of(assets, getGoals()).write(Paths.get(filename), Boolean.getBoolean("ppms.snapshot.compress"));
     }
 }
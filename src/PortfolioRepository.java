@@ -0,0 +1,70 @@
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+// Storage behind PortfolioManager. Mutations may be buffered; the returned
+// future completes once the mutation is durable as far as the backend goes.
+public interface PortfolioRepository {
+
+    PortfolioData load(String username);
+
+    // The holdings alone; the returned data has no goals. Backends that
+    // read over the network fetch only the holding fields.
+    default PortfolioData loadHoldings(String username) {
+        PortfolioData holdings = new PortfolioData();
+        holdings.getHoldings().addAll(load(username).getHoldings());
+        return holdings;
+    }
+
+    default List<PortfolioData.GoalEntry> loadGoals(String username) {
+        return load(username).getGoals();
+    }
+
+    CompletableFuture<Void> addHolding(String username, String symbol, double shares, double value);
+
+    CompletableFuture<Void> setHolding(String username, String symbol, double shares, double value);
+
+    CompletableFuture<Void> removeHolding(String username, String symbol);
+
+    // Adds the first list's holdings and overwrites the second's; no symbol
+    // is in both. Used by imports, so backends that buffer writes should
+    // take the lot as one batch.
+    default CompletableFuture<Void> putHoldings(String username, List<PortfolioData.Holding> added,
+                                                List<PortfolioData.Holding> changed) {
+        CompletableFuture<?>[] writes = new CompletableFuture<?>[added.size() + changed.size()];
+        int k = 0;
+        for (PortfolioData.Holding h : added) {
+            writes[k++] = addHolding(username, h.symbol, h.shares, h.value);
+        }
+        for (PortfolioData.Holding h : changed) {
+            writes[k++] = setHolding(username, h.symbol, h.shares, h.value);
+        }
+        return CompletableFuture.allOf(writes);
+    }
+
+    CompletableFuture<Void> addGoal(String username, String name, double targetValue, String deadline);
+
+    // True once after the stored portfolio was found changed by another writer.
+    boolean consumeStale(String username);
+
+    void flush(String username);
+
+    void flushAll();
+
+    void close();
+
+    // "mongo" (default), "holdings" or "local", from -Dppms.repository.
+    static PortfolioRepository fromSystemProperties() {
+        String kind = System.getProperty("ppms.repository", "mongo");
+        if ("local".equalsIgnoreCase(kind)) {
+            return new JournalPortfolioRepository(JournalPortfolioRepository.defaultDirectory());
+        }
+        if ("holdings".equalsIgnoreCase(kind)) {
+            return new MongoHoldingsRepository();
+        }
+        return new MongoPortfolioRepository();
+    }
+
+    static boolean isLocal() {
+        return "local".equalsIgnoreCase(System.getProperty("ppms.repository", "mongo"));
+    }
+}
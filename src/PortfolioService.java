@@ -0,0 +1,207 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.Date;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+// Serves many users' portfolios from one process without the JavaFX UI or
+// the global Session. Each user gets a UserSession holding their own
+// PortfolioManager; all of them share one repository, one I/O pool and one
+// PriceBook driven by a single simulator. Every public method may be called
+// from any thread.
+//
+// Sessions are opened on a user's first request and closed, after their
+// writes are flushed, once idle for ppms.service.idleMs (default 15 min).
+public class PortfolioService implements AutoCloseable {
+    public static final long DEFAULT_IDLE_MS = Long.getLong("ppms.service.idleMs", 15 * 60 * 1000L);
+
+    private final PortfolioRepository repository;
+    private final IoExecutor io;
+    private final PriceBook prices = new PriceBook();
+    private final PriceSimulator simulator = new PriceSimulator(prices);
+    private final ConcurrentHashMap<String, UserSession> sessions = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService evictor;
+    private final long idleMs;
+
+    public PortfolioService() {
+        this(PortfolioRepository.fromSystemProperties(), IoExecutor.shared(), DEFAULT_IDLE_MS);
+    }
+
+    public PortfolioService(PortfolioRepository repository, IoExecutor io, long idleMs) {
+        if (idleMs < 1) throw new IllegalArgumentException("idleMs must be positive");
+        this.repository = repository;
+        this.io = io;
+        this.idleMs = idleMs;
+        this.evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "portfolio-session-evictor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(1000, idleMs / 4);
+        evictor.scheduleWithFixedDelay(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    // Starts moving the shared prices.
+    public void startPricing() {
+        simulator.startSimulation(() -> { });
+    }
+
+    public PriceBook getPrices() {
+        return prices;
+    }
+
+    // Runs the request against the user's portfolio, opening a session if
+    // needed. Requests for one user run one at a time; the request must not
+    // keep the PortfolioManager after it returns.
+    public <T> T request(String username, Function<PortfolioManager, T> request) {
+        if (username == null || username.trim().isEmpty()) throw new IllegalArgumentException("username is required");
+        while (true) {
+            UserSession session = sessions.computeIfAbsent(username,
+                    user -> new UserSession(user, new PortfolioManager(repository, io, user), prices));
+            if (session.enter()) {
+                try {
+                    return session.call(request);
+                } finally {
+                    session.exit();
+                }
+            }
+            // Evicted between lookup and lock.
+            sessions.remove(username, session);
+        }
+    }
+
+    public double totalValue(String username) {
+        return request(username, PortfolioManager::getTotalValue);
+    }
+
+    // A copy of the holdings at the shared prices.
+    public PortfolioData holdings(String username) {
+        return request(username, portfolio -> {
+            PortfolioData data = new PortfolioData();
+            ListADT<Asset> assets = portfolio.getAssets();
+            for (int i = 0; i < assets.size(); i++) {
+                Asset asset = assets.get(i);
+                data.addHolding(asset.getName(), asset.getQuantity(), asset.getCurrentPrice());
+            }
+            return data;
+        });
+    }
+
+    // Holdings of a symbol already tracked take the shared price rather
+    // than the one given.
+    public CompletableFuture<Void> addAsset(String username, String symbol, String type, double price, double quantity) {
+        double shared = prices.track(symbol, price);
+        return request(username, portfolio ->
+                portfolio.addAsset(new Asset(symbol, type, shared, quantity, new Date())));
+    }
+
+    public CompletableFuture<Void> deleteAsset(String username, String symbol) {
+        return request(username, portfolio -> portfolio.deleteAsset(symbol));
+    }
+
+    public CompletableFuture<Void> addGoal(String username, String name, double target, Date deadline) {
+        return request(username, portfolio -> portfolio.addGoal(name, target, deadline));
+    }
+
+    // Flushes the user's writes and drops their session.
+    public void logout(String username) {
+        UserSession session = sessions.remove(username);
+        if (session != null) {
+            session.close();
+        }
+    }
+
+    public int activeSessions() {
+        return sessions.size();
+    }
+
+    void evictIdle() {
+        long cutoff = System.currentTimeMillis() - idleMs;
+        for (UserSession session : sessions.values()) {
+            if (session.closeIfIdle(cutoff)) {
+                sessions.remove(session.getUsername(), session);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        evictor.shutdownNow();
+        simulator.stopSimulation();
+        for (UserSession session : sessions.values()) {
+            session.close();
+        }
+        sessions.clear();
+        repository.close();
+    }
+
+    // Line-oriented front end for scripting:
+    //   <user> total | holdings | add SYMBOL TYPE PRICE QTY | delete SYMBOL
+    //   <user> goal NAME TARGET YYYY-MM-DD | logout
+    //   sessions | quit
+    public static void main(String[] args) throws IOException {
+        try (PortfolioService service = new PortfolioService()) {
+            service.startPricing();
+            BufferedReader in = new BufferedReader(new InputStreamReader(System.in));
+            String line;
+            while ((line = in.readLine()) != null) {
+                String[] words = line.trim().split("\\s+");
+                if (words[0].isEmpty()) {
+                    continue;
+                }
+                if ("quit".equals(words[0])) {
+                    break;
+                }
+                try {
+                    System.out.println(service.execute(words));
+                } catch (RuntimeException e) {
+                    System.out.println("error: " + e.getMessage());
+                }
+            }
+        } finally {
+            MongoDBConnection.shutdown();
+        }
+    }
+
+    private String execute(String[] words) {
+        if ("sessions".equals(words[0])) {
+            return activeSessions() + " active session(s)";
+        }
+        if (words.length < 2) throw new IllegalArgumentException("Expected: <user> <command>");
+        String user = words[0];
+        switch (words[1]) {
+            case "total":
+                return String.format("%.2f", totalValue(user));
+            case "holdings": {
+                StringBuilder sb = new StringBuilder();
+                for (PortfolioData.Holding holding : holdings(user).getHoldings()) {
+                    sb.append(String.format("%s %.4f @ %.2f%n", holding.symbol, holding.shares, holding.value));
+                }
+                return sb.length() == 0 ? "(no holdings)" : sb.toString().trim();
+            }
+            case "add":
+                if (words.length != 6) throw new IllegalArgumentException("Expected: add SYMBOL TYPE PRICE QTY");
+                addAsset(user, words[2], words[3], Double.parseDouble(words[4]), Double.parseDouble(words[5])).join();
+                return "ok";
+            case "delete":
+                if (words.length != 3) throw new IllegalArgumentException("Expected: delete SYMBOL");
+                deleteAsset(user, words[2]).join();
+                return "ok";
+            case "goal":
+                if (words.length != 5) throw new IllegalArgumentException("Expected: goal NAME TARGET YYYY-MM-DD");
+                addGoal(user, words[2], Double.parseDouble(words[3]),
+                        Date.from(java.time.LocalDate.parse(words[4]).atStartOfDay(java.time.ZoneOffset.UTC).toInstant())).join();
+                return "ok";
+            case "logout":
+                logout(user);
+                return "ok";
+            default:
+                throw new IllegalArgumentException("Unknown command: " + words[1]);
+        }
+    }
+}
@@ -0,0 +1,493 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32C;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+// Columnar binary image of a portfolio: every field is one primitive array,
+// and every string lives once in a shared string table that the columns
+// refer to by index. Price histories are flattened into one price column and
+// one timestamp column, with historyOffsets[i] .. historyOffsets[i + 1]
+// being holding i's slice.
+//
+// File layout, little-endian:
+//   header  magic, format version, generation, block count
+//   blocks  [int id][int flags][int raw length][int stored length][int crc32c of raw bytes][bytes]
+// Blocks may be Deflate-compressed (flag bit 0). Uncompressed blocks are
+// bulk-copied straight out of the mapped file. Unknown block ids are
+// skipped, so later versions can add columns.
+public class PortfolioSnapshot {
+    public static final int MAGIC = 0x50504D53;
+    public static final int FORMAT_VERSION = 1;
+
+    private static final int HEADER = 20;
+    private static final int BLOCK_HEADER = 20;
+    private static final int FLAG_DEFLATE = 1;
+
+    private static final int STRINGS = 1;
+    private static final int HOLDING_SYMBOL = 2;
+    private static final int HOLDING_TYPE = 3;
+    private static final int HOLDING_SHARES = 4;
+    private static final int HOLDING_PRICE = 5;
+    private static final int HISTORY_OFFSETS = 6;
+    private static final int HISTORY_PRICES = 7;
+    private static final int HISTORY_TIMES = 8;
+    private static final int GOAL_NAME = 9;
+    private static final int GOAL_TARGET = 10;
+    private static final int GOAL_DEADLINE = 11;
+
+    public long generation;
+    public String[] symbols = new String[0];
+    public String[] types = new String[0];
+    public double[] shares = new double[0];
+    public double[] prices = new double[0];
+    public int[] historyOffsets = new int[1];
+    public double[] historyPrices = new double[0];
+    public long[] historyTimes = new long[0];
+    public String[] goalNames = new String[0];
+    public double[] goalTargets = new double[0];
+    public long[] goalDeadlines = new long[0];
+
+    public int holdingCount() {
+        return symbols.length;
+    }
+
+    public int goalCount() {
+        return goalNames.length;
+    }
+
+    // Captures holdings with their full retained history, plus goals.
+    public static PortfolioSnapshot of(ListADT<Asset> assets, ListADT<Goal> goals) {
+        PortfolioSnapshot snapshot = new PortfolioSnapshot();
+        int n = assets.size();
+        snapshot.allocateHoldings(n);
+        int total = 0;
+        for (int i = 0; i < n; i++) {
+            total += assets.get(i).getHistorySize();
+        }
+        // Histories may grow while the simulator runs; each asset is copied
+        // as of one moment and the arrays grow if it outran the estimate.
+        double[] historyPrices = new double[total];
+        long[] historyTimes = new long[total];
+        int offset = 0;
+        for (int i = 0; i < n; i++) {
+            Asset asset = assets.get(i);
+            Asset.Snapshot state = asset.snapshot();
+            snapshot.symbols[i] = state.name;
+            snapshot.types[i] = state.type;
+            snapshot.shares[i] = state.quantity;
+            snapshot.prices[i] = state.price;
+            int copied;
+            while ((copied = asset.copyHistory(historyPrices, historyTimes, offset)) < 0) {
+                int size = Math.max(offset - copied, historyPrices.length + historyPrices.length / 4);
+                historyPrices = java.util.Arrays.copyOf(historyPrices, size);
+                historyTimes = java.util.Arrays.copyOf(historyTimes, size);
+            }
+            offset += copied;
+            snapshot.historyOffsets[i + 1] = offset;
+        }
+        snapshot.historyPrices = offset == historyPrices.length ? historyPrices : java.util.Arrays.copyOf(historyPrices, offset);
+        snapshot.historyTimes = offset == historyTimes.length ? historyTimes : java.util.Arrays.copyOf(historyTimes, offset);
+        snapshot.allocateGoals(goals.size());
+        for (int i = 0; i < goals.size(); i++) {
+            Goal goal = goals.get(i);
+            snapshot.goalNames[i] = goal.getName();
+            snapshot.goalTargets[i] = goal.getTargetValue();
+            snapshot.goalDeadlines[i] = goal.getDeadline().getTime();
+        }
+        return snapshot;
+    }
+
+    // Holdings and goals only; no price history.
+    public static PortfolioSnapshot of(PortfolioData data) {
+        PortfolioSnapshot snapshot = new PortfolioSnapshot();
+        List<PortfolioData.Holding> holdings = data.getHoldings();
+        snapshot.allocateHoldings(holdings.size());
+        for (int i = 0; i < holdings.size(); i++) {
+            PortfolioData.Holding holding = holdings.get(i);
+            snapshot.symbols[i] = holding.symbol;
+            snapshot.types[i] = "Stock";
+            snapshot.shares[i] = holding.shares;
+            snapshot.prices[i] = holding.value;
+        }
+        List<PortfolioData.GoalEntry> goals = data.getGoals();
+        snapshot.allocateGoals(goals.size());
+        for (int i = 0; i < goals.size(); i++) {
+            PortfolioData.GoalEntry goal = goals.get(i);
+            snapshot.goalNames[i] = goal.name;
+            snapshot.goalTargets[i] = goal.targetValue;
+            snapshot.goalDeadlines[i] = parseDeadline(goal.deadline);
+        }
+        return snapshot;
+    }
+
+    // Same fallback as PortfolioManager: an unreadable deadline becomes now.
+    private static long parseDeadline(String deadline) {
+        try {
+            return Instant.parse(deadline).toEpochMilli();
+        } catch (RuntimeException e) {
+            return System.currentTimeMillis();
+        }
+    }
+
+    public PortfolioData toData() {
+        PortfolioData data = new PortfolioData();
+        for (int i = 0; i < symbols.length; i++) {
+            data.addHolding(symbols[i], shares[i], prices[i]);
+        }
+        for (int i = 0; i < goalNames.length; i++) {
+            data.addGoal(goalNames[i], goalTargets[i], Instant.ofEpochMilli(goalDeadlines[i]).toString());
+        }
+        return data;
+    }
+
+    public Asset toAsset(int index) {
+        Asset asset = new Asset(symbols[index], types[index], prices[index], shares[index], new Date());
+        if (historyOffsets[index + 1] > historyOffsets[index]) {
+            asset.restoreHistory(historyPrices, historyTimes, historyOffsets[index], historyOffsets[index + 1]);
+        }
+        return asset;
+    }
+
+    public Goal toGoal(int index) {
+        return new Goal(goalNames[index], goalTargets[index], new Date(goalDeadlines[index]));
+    }
+
+    private void allocateHoldings(int n) {
+        symbols = new String[n];
+        types = new String[n];
+        shares = new double[n];
+        prices = new double[n];
+        historyOffsets = new int[n + 1];
+    }
+
+    private void allocateGoals(int n) {
+        goalNames = new String[n];
+        goalTargets = new double[n];
+        goalDeadlines = new long[n];
+    }
+
+    // Writes to a temporary file in the same directory and renames it over
+    // the target, so a reader never sees a half-written snapshot. Each
+    // column is encoded and written before the next, so at most one
+    // encoded column is on the heap at a time.
+    public void write(Path path, boolean compress) throws IOException {
+        Map<String, Integer> ids = new HashMap<>();
+        List<String> table = new java.util.ArrayList<>();
+        int[] symbolIds = intern(symbols, ids, table);
+        int[] typeIds = intern(types, ids, table);
+        int[] goalNameIds = intern(goalNames, ids, table);
+
+        Path dir = path.toAbsolutePath().getParent();
+        Files.createDirectories(dir);
+        Path tmp = dir.resolve(path.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            out.position(HEADER);
+            int blocks = 0;
+            blocks += writeBlock(out, STRINGS, encodeStrings(table), compress);
+            blocks += writeBlock(out, HOLDING_SYMBOL, ints(symbolIds), compress);
+            blocks += writeBlock(out, HOLDING_TYPE, ints(typeIds), compress);
+            blocks += writeBlock(out, HOLDING_SHARES, doubles(shares), compress);
+            blocks += writeBlock(out, HOLDING_PRICE, doubles(prices), compress);
+            blocks += writeBlock(out, HISTORY_OFFSETS, ints(historyOffsets), compress);
+            blocks += writeBlock(out, HISTORY_PRICES, doubles(historyPrices), compress);
+            blocks += writeBlock(out, HISTORY_TIMES, longs(historyTimes), compress);
+            blocks += writeBlock(out, GOAL_NAME, ints(goalNameIds), compress);
+            blocks += writeBlock(out, GOAL_TARGET, doubles(goalTargets), compress);
+            blocks += writeBlock(out, GOAL_DEADLINE, longs(goalDeadlines), compress);
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(FORMAT_VERSION).putLong(generation).putInt(blocks);
+            header.flip();
+            out.position(0);
+            writeFully(out, header);
+            out.force(true);
+        }
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public static PortfolioSnapshot read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER) throw new IOException("Snapshot too short: " + path);
+            if (size > Integer.MAX_VALUE) throw new IOException("Snapshot too large to map: " + path);
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            mapped.order(ByteOrder.LITTLE_ENDIAN);
+            if (mapped.getInt() != MAGIC) throw new IOException("Not a portfolio snapshot: " + path);
+            int version = mapped.getInt();
+            if (version > FORMAT_VERSION) throw new IOException("Snapshot format " + version + " is newer than " + FORMAT_VERSION);
+
+            PortfolioSnapshot snapshot = new PortfolioSnapshot();
+            snapshot.generation = mapped.getLong();
+            int blockCount = mapped.getInt();
+            String[] table = new String[0];
+            int[] symbolIds = new int[0];
+            int[] typeIds = new int[0];
+            int[] goalNameIds = new int[0];
+            for (int b = 0; b < blockCount; b++) {
+                if (mapped.remaining() < BLOCK_HEADER) throw new IOException("Truncated snapshot: " + path);
+                int id = mapped.getInt();
+                int flags = mapped.getInt();
+                int rawLength = mapped.getInt();
+                int storedLength = mapped.getInt();
+                int checksum = mapped.getInt();
+                if (storedLength < 0 || storedLength > mapped.remaining()) throw new IOException("Truncated snapshot: " + path);
+                ByteBuffer stored = mapped.slice();
+                stored.limit(storedLength);
+                mapped.position(mapped.position() + storedLength);
+                ByteBuffer raw = (flags & FLAG_DEFLATE) != 0 ? inflate(stored, rawLength) : stored;
+                raw.order(ByteOrder.LITTLE_ENDIAN);
+                if (raw.remaining() != rawLength || crc(raw) != checksum) {
+                    throw new IOException("Snapshot block " + id + " is corrupt: " + path);
+                }
+                switch (id) {
+                    case STRINGS:
+                        table = decodeStrings(raw);
+                        break;
+                    case HOLDING_SYMBOL:
+                        symbolIds = readInts(raw);
+                        break;
+                    case HOLDING_TYPE:
+                        typeIds = readInts(raw);
+                        break;
+                    case HOLDING_SHARES:
+                        snapshot.shares = readDoubles(raw);
+                        break;
+                    case HOLDING_PRICE:
+                        snapshot.prices = readDoubles(raw);
+                        break;
+                    case HISTORY_OFFSETS:
+                        snapshot.historyOffsets = readInts(raw);
+                        break;
+                    case HISTORY_PRICES:
+                        snapshot.historyPrices = readDoubles(raw);
+                        break;
+                    case HISTORY_TIMES:
+                        snapshot.historyTimes = readLongs(raw);
+                        break;
+                    case GOAL_NAME:
+                        goalNameIds = readInts(raw);
+                        break;
+                    case GOAL_TARGET:
+                        snapshot.goalTargets = readDoubles(raw);
+                        break;
+                    case GOAL_DEADLINE:
+                        snapshot.goalDeadlines = readLongs(raw);
+                        break;
+                    default:
+                        break;
+                }
+            }
+            snapshot.symbols = resolve(symbolIds, table);
+            snapshot.types = resolve(typeIds, table);
+            snapshot.goalNames = resolve(goalNameIds, table);
+            snapshot.validate(path);
+            return snapshot;
+        }
+    }
+
+    private void validate(Path path) throws IOException {
+        int n = symbols.length;
+        int goals = goalNames.length;
+        if (types.length != n || shares.length != n || prices.length != n || historyOffsets.length != n + 1
+                || historyPrices.length != historyTimes.length || historyOffsets[n] != historyPrices.length
+                || goalTargets.length != goals || goalDeadlines.length != goals) {
+            throw new IOException("Snapshot columns disagree in length: " + path);
+        }
+        for (int i = 0; i < n; i++) {
+            if (historyOffsets[i] < 0 || historyOffsets[i] > historyOffsets[i + 1]) {
+                throw new IOException("Snapshot history offsets are not ascending: " + path);
+            }
+        }
+    }
+
+    private static int[] intern(String[] values, Map<String, Integer> ids, List<String> table) {
+        int[] out = new int[values.length];
+        for (int i = 0; i < values.length; i++) {
+            Integer id = ids.get(values[i]);
+            if (id == null) {
+                id = table.size();
+                ids.put(values[i], id);
+                table.add(values[i]);
+            }
+            out[i] = id;
+        }
+        return out;
+    }
+
+    private static String[] resolve(int[] ids, String[] table) throws IOException {
+        String[] out = new String[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            if (ids[i] < 0 || ids[i] >= table.length) throw new IOException("String id " + ids[i] + " out of range");
+            out[i] = table[ids[i]];
+        }
+        return out;
+    }
+
+    // count, then count + 1 end offsets into the UTF-8 bytes that follow.
+    private static ByteBuffer encodeStrings(List<String> table) {
+        byte[][] encoded = new byte[table.size()][];
+        int total = 0;
+        for (int i = 0; i < encoded.length; i++) {
+            encoded[i] = table.get(i).getBytes(StandardCharsets.UTF_8);
+            total += encoded[i].length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(4 + 4 * (encoded.length + 1) + total).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(encoded.length);
+        int offset = 0;
+        buffer.putInt(offset);
+        for (byte[] bytes : encoded) {
+            offset += bytes.length;
+            buffer.putInt(offset);
+        }
+        for (byte[] bytes : encoded) {
+            buffer.put(bytes);
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static String[] decodeStrings(ByteBuffer raw) throws IOException {
+        int count = raw.getInt();
+        if (count < 0 || 4L * (count + 1) > raw.remaining()) throw new IOException("Bad string table");
+        int[] offsets = new int[count + 1];
+        raw.asIntBuffer().get(offsets);
+        raw.position(raw.position() + 4 * (count + 1));
+        byte[] bytes = new byte[raw.remaining()];
+        raw.get(bytes);
+        String[] table = new String[count];
+        for (int i = 0; i < count; i++) {
+            if (offsets[i] > offsets[i + 1] || offsets[i + 1] > bytes.length) throw new IOException("Bad string table");
+            table[i] = new String(bytes, offsets[i], offsets[i + 1] - offsets[i], StandardCharsets.UTF_8);
+        }
+        return table;
+    }
+
+    private static ByteBuffer ints(int[] values) {
+        ByteBuffer buffer = ByteBuffer.allocate(values.length * 4).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.asIntBuffer().put(values);
+        return buffer;
+    }
+
+    private static ByteBuffer doubles(double[] values) {
+        ByteBuffer buffer = ByteBuffer.allocate(values.length * 8).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.asDoubleBuffer().put(values);
+        return buffer;
+    }
+
+    private static ByteBuffer longs(long[] values) {
+        ByteBuffer buffer = ByteBuffer.allocate(values.length * 8).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.asLongBuffer().put(values);
+        return buffer;
+    }
+
+    private static int[] readInts(ByteBuffer raw) {
+        int[] out = new int[raw.remaining() / 4];
+        raw.asIntBuffer().get(out);
+        return out;
+    }
+
+    private static double[] readDoubles(ByteBuffer raw) {
+        double[] out = new double[raw.remaining() / 8];
+        raw.asDoubleBuffer().get(out);
+        return out;
+    }
+
+    private static long[] readLongs(ByteBuffer raw) {
+        long[] out = new long[raw.remaining() / 8];
+        raw.asLongBuffer().get(out);
+        return out;
+    }
+
+    // Writes the block header and the column with one gathering write, so
+    // the column is never copied behind a header. Returns 1, the block count.
+    private static int writeBlock(FileChannel out, int id, ByteBuffer raw, boolean compress) throws IOException {
+        int rawLength = raw.remaining();
+        int checksum = crc(raw);
+        ByteBuffer stored = raw;
+        int flags = 0;
+        if (compress && rawLength > 0) {
+            ByteBuffer deflated = deflate(raw);
+            if (deflated.remaining() < rawLength) {
+                stored = deflated;
+                flags |= FLAG_DEFLATE;
+            }
+        }
+        ByteBuffer header = ByteBuffer.allocate(BLOCK_HEADER).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(id).putInt(flags).putInt(rawLength).putInt(stored.remaining()).putInt(checksum);
+        header.flip();
+        ByteBuffer[] block = { header, stored.duplicate() };
+        while (block[0].hasRemaining() || block[1].hasRemaining()) {
+            out.write(block);
+        }
+        return 1;
+    }
+
+    private static ByteBuffer deflate(ByteBuffer raw) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(raw.duplicate());
+            deflater.finish();
+            ByteBuffer out = ByteBuffer.allocate(raw.remaining() + 64);
+            while (!deflater.finished()) {
+                if (!out.hasRemaining()) {
+                    ByteBuffer bigger = ByteBuffer.allocate(out.capacity() * 2);
+                    out.flip();
+                    bigger.put(out);
+                    out = bigger;
+                }
+                deflater.deflate(out);
+            }
+            out.flip();
+            return out;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static ByteBuffer inflate(ByteBuffer stored, int rawLength) throws IOException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(stored);
+            ByteBuffer out = ByteBuffer.allocate(rawLength);
+            while (out.hasRemaining() && !inflater.finished()) {
+                if (inflater.inflate(out) == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+            }
+            out.flip();
+            return out;
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt compressed block", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static int crc(ByteBuffer buffer) {
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.duplicate());
+        return (int) crc.getValue();
+    }
+
+    private static void writeFully(FileChannel out, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+    }
+}
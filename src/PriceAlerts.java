@@ -0,0 +1,44 @@
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+// Alerts consumer: reports a symbol once it has moved at least
+// ppms.alerts.movePercent (default 5) from the price it had at its last
+// alert, or when it was first seen. Only touched by its consumer thread;
+// the listener is called there too.
+public class PriceAlerts implements TickEventBus.TickHandler {
+    public static final double DEFAULT_MOVE_PERCENT =
+            Double.parseDouble(System.getProperty("ppms.alerts.movePercent", "5"));
+
+    private final double movePercent;
+    private final Consumer<String> listener;
+    private final Map<String, double[]> reference = new HashMap<>();
+
+    public PriceAlerts(Consumer<String> listener) {
+        this(DEFAULT_MOVE_PERCENT, listener);
+    }
+
+    public PriceAlerts(double movePercent, Consumer<String> listener) {
+        if (movePercent <= 0) throw new IllegalArgumentException("movePercent must be positive");
+        this.movePercent = movePercent;
+        this.listener = listener;
+    }
+
+    @Override
+    public void onTick(String symbol, double price, long time, int source, boolean endOfBatch) {
+        double[] last = reference.get(symbol);
+        if (last == null) {
+            reference.put(symbol, new double[] {price});
+            return;
+        }
+        if (last[0] <= 0) {
+            last[0] = price;
+            return;
+        }
+        double move = (price - last[0]) / last[0] * 100;
+        if (Math.abs(move) >= movePercent) {
+            last[0] = price;
+            listener.accept(String.format("%s %s %.1f%% to %.2f", symbol, move > 0 ? "up" : "down", Math.abs(move), price));
+        }
+    }
+}
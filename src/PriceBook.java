@@ -0,0 +1,67 @@
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Last price per symbol, shared by every user a PortfolioService serves, so
+// two users holding the same symbol see the same price. Writers are the
+// simulator thread; readers copy prices into their own Assets under their
+// session lock, so Assets are never touched from two threads at once.
+public class PriceBook {
+    private final ConcurrentHashMap<String, Double> prices = new ConcurrentHashMap<>();
+    // Bumped on every change; a reader that saw the same value has nothing
+    // to copy.
+    private final AtomicLong sequence = new AtomicLong();
+
+    // Starts tracking the symbol at the given price unless it is tracked
+    // already, and returns the price in effect.
+    public double track(String symbol, double price) {
+        Double previous = prices.putIfAbsent(symbol, price);
+        if (previous == null) {
+            sequence.incrementAndGet();
+            return price;
+        }
+        return previous;
+    }
+
+    public void update(String symbol, double price) {
+        prices.put(symbol, price);
+        sequence.incrementAndGet();
+    }
+
+    // NaN if the symbol is not tracked.
+    public double price(String symbol) {
+        Double price = prices.get(symbol);
+        return price == null ? Double.NaN : price;
+    }
+
+    public long sequence() {
+        return sequence.get();
+    }
+
+    public int size() {
+        return prices.size();
+    }
+
+    // Visits a point-in-time view of the tracked symbols.
+    public void forEach(java.util.function.ObjDoubleConsumer<String> action) {
+        prices.forEach((symbol, price) -> action.accept(symbol, price));
+    }
+
+    // Copies newer prices into the portfolio's holdings and starts tracking
+    // any it holds that the book has not seen. Returns the sequence the
+    // portfolio is now current with.
+    public long applyTo(PortfolioManager portfolio, long seenSequence) {
+        long current = sequence.get();
+        if (current == seenSequence) {
+            return current;
+        }
+        ListADT<Asset> assets = portfolio.getAssets();
+        for (int i = 0; i < assets.size(); i++) {
+            Asset asset = assets.get(i);
+            double price = track(asset.getName(), asset.getCurrentPrice());
+            if (price != asset.getCurrentPrice()) {
+                asset.setCurrentPrice(price);
+            }
+        }
+        return current;
+    }
+}
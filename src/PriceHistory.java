@@ -0,0 +1,116 @@
+public class PriceHistory {
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    private final double[] prices;
+    private final long[] timestamps;
+    private int head;
+    private int size;
+
+    public PriceHistory() {
+        this(DEFAULT_CAPACITY, true);
+    }
+
+    public PriceHistory(int capacity, boolean trackTimestamps) {
+        if (capacity <= 0) throw new IllegalArgumentException("Capacity must be positive");
+        prices = new double[capacity];
+        timestamps = trackTimestamps ? new long[capacity] : null;
+        head = 0;
+        size = 0;
+    }
+
+    public void add(double price) {
+        add(price, timestamps != null ? System.currentTimeMillis() : 0L);
+    }
+
+    // Once the buffer is full the oldest sample is overwritten.
+    public void add(double price, long timestamp) {
+        int slot;
+        if (size < prices.length) {
+            slot = physical(size);
+            size++;
+        } else {
+            slot = head;
+            head = (head + 1) % prices.length;
+        }
+        prices[slot] = price;
+        if (timestamps != null) {
+            timestamps[slot] = timestamp;
+        }
+    }
+
+    // Index 0 is the oldest retained sample, size() - 1 the newest.
+    public double get(int index) {
+        if (index < 0 || index >= size) throw new IndexOutOfBoundsException();
+        return prices[physical(index)];
+    }
+
+    public long getTimestamp(int index) {
+        if (timestamps == null) throw new IllegalStateException("Timestamps are not tracked");
+        if (index < 0 || index >= size) throw new IndexOutOfBoundsException();
+        return timestamps[physical(index)];
+    }
+
+    public double getFirst() {
+        return get(0);
+    }
+
+    public double getLast() {
+        return get(size - 1);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return prices.length;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean isFull() {
+        return size == prices.length;
+    }
+
+    public boolean hasTimestamps() {
+        return timestamps != null;
+    }
+
+    public void clear() {
+        head = 0;
+        size = 0;
+    }
+
+    // Copies the retained samples oldest-first into dest and returns how many were written.
+    public int copyTo(double[] dest) {
+        return copyTo(dest, 0);
+    }
+
+    public int copyTo(double[] dest, int offset) {
+        int n = Math.min(size, dest.length - offset);
+        int firstRun = Math.min(n, prices.length - head);
+        System.arraycopy(prices, head, dest, offset, firstRun);
+        if (n > firstRun) {
+            System.arraycopy(prices, 0, dest, offset + firstRun, n - firstRun);
+        }
+        return n;
+    }
+
+    public int copyTimestampsTo(long[] dest, int offset) {
+        if (timestamps == null) throw new IllegalStateException("Timestamps are not tracked");
+        int n = Math.min(size, dest.length - offset);
+        int firstRun = Math.min(n, timestamps.length - head);
+        System.arraycopy(timestamps, head, dest, offset, firstRun);
+        if (n > firstRun) {
+            System.arraycopy(timestamps, 0, dest, offset + firstRun, n - firstRun);
+        }
+        return n;
+    }
+
+    private int physical(int index) {
+        int slot = head + index;
+        return slot >= prices.length ? slot - prices.length : slot;
+    }
+}
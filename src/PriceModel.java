@@ -0,0 +1,68 @@
+import java.util.SplittableRandom;
+
+// One step of a simulated price path. Implementations are stateless; the
+// per-asset state is the random stream and the anchor (the price the asset
+// had when the simulator first saw it), both owned by the simulator.
+public interface PriceModel {
+
+    double next(double price, double anchor, double dtSeconds, SplittableRandom random);
+
+    // The original simulator: a uniform step of up to +/- step/2 per tick,
+    // independent of the tick length, floored at 1.
+    static PriceModel randomWalk(double step) {
+        return (price, anchor, dt, random) -> Math.max(1, price + (random.nextDouble() - 0.5) * step);
+    }
+
+    // Geometric Brownian motion with annualised drift and volatility.
+    static PriceModel gbm(double drift, double volatility) {
+        return (price, anchor, dt, random) -> {
+            double years = dt / SECONDS_PER_YEAR;
+            double shock = gaussian(random) * volatility * Math.sqrt(years);
+            return price * Math.exp((drift - 0.5 * volatility * volatility) * years + shock);
+        };
+    }
+
+    // Ornstein-Uhlenbeck pull towards the anchor at the given annualised
+    // speed, with volatility relative to the anchor; floored at 1% of it.
+    static PriceModel meanReversion(double speed, double volatility) {
+        return (price, anchor, dt, random) -> {
+            double years = dt / SECONDS_PER_YEAR;
+            double pulled = price + speed * (anchor - price) * years;
+            double shock = gaussian(random) * volatility * anchor * Math.sqrt(years);
+            return Math.max(anchor * 0.01, pulled + shock);
+        };
+    }
+
+    double SECONDS_PER_YEAR = 365.25 * 24 * 3600;
+
+    // "walk" (default), "gbm" or "meanrev", tuned by ppms.sim.step,
+    // ppms.sim.drift, ppms.sim.volatility and ppms.sim.speed.
+    static PriceModel fromSystemProperties() {
+        String name = System.getProperty("ppms.sim.model", "walk");
+        double volatility = Double.parseDouble(System.getProperty("ppms.sim.volatility", "0.3"));
+        switch (name.toLowerCase()) {
+            case "walk":
+                return randomWalk(Double.parseDouble(System.getProperty("ppms.sim.step", "10")));
+            case "gbm":
+                return gbm(Double.parseDouble(System.getProperty("ppms.sim.drift", "0.05")), volatility);
+            case "meanrev":
+                return meanReversion(Double.parseDouble(System.getProperty("ppms.sim.speed", "5")), volatility);
+            default:
+                throw new IllegalArgumentException("Unknown price model: " + name);
+        }
+    }
+
+    // Standard normal by Marsaglia's polar method; SplittableRandom has no
+    // nextGaussian on Java 17.
+    static double gaussian(SplittableRandom random) {
+        double u;
+        double v;
+        double s;
+        do {
+            u = random.nextDouble() * 2 - 1;
+            v = random.nextDouble() * 2 - 1;
+            s = u * u + v * v;
+        } while (s >= 1 || s == 0);
+        return u * Math.sqrt(-2 * Math.log(s) / s);
+    }
+}
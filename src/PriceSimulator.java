@@ -1,39 +1,285 @@
-import java.util.Random;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
+// Moves simulated prices, either of one portfolio's holdings and watchlist
+// or of a shared PriceBook.
+//
+// Symbols are split across workers by hash, so each Asset is only ever
+// stepped by one thread. Every symbol has its own SplittableRandom seeded
+// from the base seed and the symbol, so a run is reproducible for a given
+// seed whatever the worker count or list order. Periods shorter than the
+// scheduler can wake for are caught up in batches: each wakeup applies
+// every tick that has fallen due since the last one.
+//
+// Every tick is also published to the TickEventBus given to publishTo(),
+// if any; in PriceBook mode only the last price of each wakeup is.
+//
+// Defaults come from ppms.sim.periodMicros (2 s), ppms.sim.workers (cores),
+// ppms.sim.seed (random unless set) and PriceModel.fromSystemProperties().
 public class PriceSimulator {
-    private Random rand = new Random();
-    private PortfolioManager portfolio;
-    private Timer timer;
+    public static final long DEFAULT_PERIOD_MICROS = Long.getLong("ppms.sim.periodMicros", 2_000_000L);
+    public static final int DEFAULT_WORKERS = Integer.getInteger("ppms.sim.workers",
+            Runtime.getRuntime().availableProcessors());
+
+    private static final long MIN_WAKEUP_NANOS = 1_000_000;
+    // The UI is told about ticks at most this often.
+    private static final long MIN_CALLBACK_NANOS = 100_000_000;
+    // A worker that fell further behind than this skips the rest.
+    private static final long MAX_ROUNDS_PER_WAKEUP = Long.getLong("ppms.sim.maxCatchUp", 10_000);
+
+    private final PortfolioManager portfolio;
+    private final PriceBook book;
+    private final PriceModel model;
+    private final long periodNanos;
+    private final long seed;
+    private final Worker[] workers;
+    private final AtomicLong ticks = new AtomicLong();
+    private volatile TickEventBus bus;
+    private ScheduledExecutorService scheduler;
 
     public PriceSimulator(PortfolioManager portfolio) {
+        this(portfolio, PriceModel.fromSystemProperties(), DEFAULT_PERIOD_MICROS, defaultSeed(), DEFAULT_WORKERS);
+    }
+
+    public PriceSimulator(PriceBook book) {
+        this(book, PriceModel.fromSystemProperties(), DEFAULT_PERIOD_MICROS, defaultSeed(), DEFAULT_WORKERS);
+    }
+
+    public PriceSimulator(PortfolioManager portfolio, PriceModel model, long periodMicros, long seed, int workers) {
+        this(portfolio, null, model, periodMicros, seed, workers);
+    }
+
+    // Moves the shared prices in the book instead of one portfolio's
+    // Assets; sessions pick the new prices up from the book.
+    public PriceSimulator(PriceBook book, PriceModel model, long periodMicros, long seed, int workers) {
+        this(null, book, model, periodMicros, seed, workers);
+    }
+
+    private PriceSimulator(PortfolioManager portfolio, PriceBook book, PriceModel model,
+                           long periodMicros, long seed, int workers) {
+        if (periodMicros < 1 || workers < 1) throw new IllegalArgumentException("Invalid simulator settings");
         this.portfolio = portfolio;
+        this.book = book;
+        this.model = model;
+        this.periodNanos = periodMicros * 1000;
+        this.seed = seed;
+        this.workers = new Worker[workers];
+        for (int i = 0; i < workers; i++) {
+            this.workers[i] = new Worker(i);
+        }
     }
 
-    public void startSimulation(Runnable updateCallback) {
-        timer = new Timer();
-        timer.scheduleAtFixedRate(new TimerTask() {
-            @Override
-            public void run() {
-                ListADT<Asset> assets = portfolio.getAssets();
-                for (int i = 0; i < assets.size(); i++) {
-                    Asset asset = assets.get(i);
-                    double change = (rand.nextDouble() - 0.5) * 10;
-                    asset.setCurrentPrice(Math.max(1, asset.getCurrentPrice() + change));
+    private static long defaultSeed() {
+        String configured = System.getProperty("ppms.sim.seed");
+        return configured != null ? Long.parseLong(configured) : System.nanoTime();
+    }
+
+    public void publishTo(TickEventBus bus) {
+        this.bus = bus;
+    }
+
+    // For when the ticks are only wanted on the bus.
+    public void startSimulation() {
+        startSimulation(() -> { });
+    }
+
+    // Ticks once straight away, then every period. The callback runs on a
+    // simulator thread after a round, at most every period or 100 ms,
+    // whichever is longer.
+    public synchronized void startSimulation(Runnable updateCallback) {
+        stopSimulation();
+        AtomicInteger count = new AtomicInteger();
+        scheduler = Executors.newScheduledThreadPool(workers.length, r -> {
+            Thread thread = new Thread(r, "price-sim-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        long start = System.nanoTime();
+        long wakeup = Math.max(periodNanos, MIN_WAKEUP_NANOS);
+        long callbackEvery = Math.max(periodNanos, MIN_CALLBACK_NANOS);
+        long[] lastCallback = {start - callbackEvery};
+        for (Worker worker : workers) {
+            worker.rounds = 0;
+            scheduler.scheduleAtFixedRate(() -> {
+                try {
+                    long due = (System.nanoTime() - start) / periodNanos + 1;
+                    if (!worker.catchUp(due) || worker.index != 0) {
+                        return;
+                    }
+                    long now = System.nanoTime();
+                    if (now - lastCallback[0] >= callbackEvery) {
+                        lastCallback[0] = now;
+                        updateCallback.run();
+                    }
+                } catch (RuntimeException e) {
+                    // An exception would cancel the schedule for good.
+                    System.err.println("Price simulation tick failed: " + e);
                 }
-                ListADT<Asset> watchlist = portfolio.getWatchlist();
-                for (int i = 0; i < watchlist.size(); i++) {
-                    Asset asset = watchlist.get(i);
-                    double change = (rand.nextDouble() - 0.5) * 10;
-                    asset.setCurrentPrice(Math.max(1, asset.getCurrentPrice() + change));
+            }, 0, wakeup, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    public synchronized void stopSimulation() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    // Load-test mode: runs the given number of rounds over every symbol as
+    // fast as the workers can, in parallel, and returns the ticks applied.
+    // May run alongside a started simulation.
+    public long burst(long rounds) {
+        ExecutorService pool = Executors.newFixedThreadPool(workers.length);
+        try {
+            long before = ticks.get();
+            Future<?>[] done = new Future<?>[workers.length];
+            for (int i = 0; i < workers.length; i++) {
+                Worker worker = workers[i];
+                done[i] = pool.submit(() -> worker.step(rounds));
+            }
+            for (Future<?> future : done) {
+                future.get();
+            }
+            return ticks.get() - before;
+        } catch (Exception e) {
+            throw new IllegalStateException("Burst failed", e);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    // Ticks applied since construction.
+    public long getTickCount() {
+        return ticks.get();
+    }
+
+    private static final class Stream {
+        final SplittableRandom random;
+        final double anchor;
+
+        Stream(SplittableRandom random, double anchor) {
+            this.random = random;
+            this.anchor = anchor;
+        }
+    }
+
+    private final class Worker {
+        final int index;
+        final Map<String, Stream> streams = new HashMap<>();
+        // Rounds applied since start; only touched by the scheduled task.
+        long rounds;
+
+        Worker(int index) {
+            this.index = index;
+        }
+
+        // Applies the rounds that have fallen due; false if none had.
+        boolean catchUp(long due) {
+            long behind = due - rounds;
+            if (behind <= 0) {
+                return false;
+            }
+            step(Math.min(behind, MAX_ROUNDS_PER_WAKEUP));
+            rounds = due;
+            return true;
+        }
+
+        synchronized void step(long n) {
+            double dt = periodNanos / 1e9;
+            long applied = 0;
+            TickEventBus bus = PriceSimulator.this.bus;
+            if (book != null) {
+                long[] count = {0};
+                book.forEach((symbol, price) -> {
+                    if (owns(symbol)) {
+                        Stream stream = stream(symbol, price);
+                        double p = price;
+                        for (long k = 0; k < n; k++) {
+                            p = model.next(p, stream.anchor, dt, stream.random);
+                        }
+                        // The book keeps only the latest price.
+                        book.update(symbol, p);
+                        if (bus != null) {
+                            bus.publish(symbol, p, System.currentTimeMillis(), TickEventBus.SOURCE_SIMULATOR);
+                        }
+                        count[0] += n;
+                    }
+                });
+                applied = count[0];
+            } else {
+                long now = System.currentTimeMillis();
+                applied += step(portfolio.getAssetsSnapshot(), n, dt, now, bus);
+                applied += step(portfolio.getWatchlistSnapshot(), n, dt, now, bus);
+            }
+            ticks.addAndGet(applied);
+        }
+
+        // Catch-up ticks are spread back over the period they stand for.
+        private long step(ListADT<Asset> assets, long n, double dt, long now, TickEventBus bus) {
+            double periodMillis = periodNanos / 1e6;
+            long applied = 0;
+            for (int i = 0; i < assets.size(); i++) {
+                Asset asset = assets.get(i);
+                if (asset == null || !owns(asset.getName())) {
+                    continue;
                 }
-                updateCallback.run();
+                String symbol = asset.getName();
+                Stream stream = stream(symbol, asset.getCurrentPrice());
+                double p = asset.getCurrentPrice();
+                for (long k = 0; k < n; k++) {
+                    p = model.next(p, stream.anchor, dt, stream.random);
+                    long time = now - (long) ((n - 1 - k) * periodMillis);
+                    asset.setCurrentPrice(p, time);
+                    if (bus != null) {
+                        bus.publish(symbol, p, time, TickEventBus.SOURCE_SIMULATOR);
+                    }
+                }
+                applied += n;
+            }
+            return applied;
+        }
+
+        private boolean owns(String symbol) {
+            return Math.floorMod(symbol.hashCode(), workers.length) == index;
+        }
+
+        private Stream stream(String symbol, double price) {
+            Stream stream = streams.get(symbol);
+            if (stream == null) {
+                stream = new Stream(new SplittableRandom(seed ^ (symbol.hashCode() * 0x9E3779B97F4A7C15L)), price);
+                streams.put(symbol, stream);
             }
-        }, 0, 2000);
+            return stream;
+        }
     }
 
-    public void stopSimulation() {
-        if (timer != null) timer.cancel();
+    // Throughput check: java PriceSimulator [assets] [rounds] [workers]
+    public static void main(String[] args) throws Exception {
+        int assetCount = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        long rounds = args.length > 1 ? Long.parseLong(args[1]) : 200;
+        int workerCount = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_WORKERS;
+        java.nio.file.Path dir = java.nio.file.Files.createTempDirectory("ppms-sim");
+        PortfolioManager portfolio = new PortfolioManager(new JournalPortfolioRepository(dir));
+        for (int i = 0; i < assetCount; i++) {
+            portfolio.restoreAsset(new Asset("SIM" + i, "Stock", 100, 1, new java.util.Date()));
+        }
+        PriceSimulator simulator = new PriceSimulator(portfolio, PriceModel.fromSystemProperties(),
+                DEFAULT_PERIOD_MICROS, 42, workerCount);
+        simulator.burst(Math.max(1, rounds / 10));
+        long started = System.nanoTime();
+        long applied = simulator.burst(rounds);
+        double seconds = (System.nanoTime() - started) / 1e9;
+        System.out.printf("%d ticks on %d worker(s) in %.3f s: %.0f ticks/s%n",
+                applied, workerCount, seconds, applied / seconds);
+        portfolio.close();
     }
-}
\ No newline at end of file
+}
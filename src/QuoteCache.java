@@ -0,0 +1,178 @@
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Quotes by symbol in front of FinnhubClient, so symbols the app keeps
+// asking for (the ticker, repeat lookups) cost one API call per TTL.
+//
+// A quote younger than the TTL is returned as is. One that is older but
+// still within the stale window is returned straight away too, while a
+// single background call refreshes it. Anything older, or never seen,
+// waits for a call; concurrent lookups of the same symbol share that one
+// call. Failed calls are not cached, and a failed refresh keeps the stale
+// quote. The least recently used symbols are evicted beyond maxEntries.
+//
+// Cached Quote objects are shared between callers and must not be
+// modified. Settings: ppms.quotes.ttlMs (15 s), ppms.quotes.staleMs (5 min)
+// and ppms.quotes.maxEntries (256).
+public class QuoteCache {
+    public static final long DEFAULT_TTL_MS = Long.getLong("ppms.quotes.ttlMs", 15_000L);
+    public static final long DEFAULT_STALE_MS = Long.getLong("ppms.quotes.staleMs", 5 * 60_000L);
+    public static final int DEFAULT_MAX_ENTRIES = Integer.getInteger("ppms.quotes.maxEntries", 256);
+
+    private static final QuoteCache SHARED =
+            new QuoteCache(FinnhubClient.shared(), DEFAULT_TTL_MS, DEFAULT_STALE_MS, DEFAULT_MAX_ENTRIES);
+
+    private final FinnhubClient client;
+    private final long ttlMillis;
+    private final long staleMillis;
+    // Access-ordered, so the eldest entry is the least recently used.
+    private final Map<String, Entry> entries;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong staleHits = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong calls = new AtomicLong();
+
+    public QuoteCache(FinnhubClient client, long ttlMillis, long staleMillis, int maxEntries) {
+        if (ttlMillis < 0 || staleMillis < 0 || maxEntries < 1) throw new IllegalArgumentException("Invalid cache settings");
+        this.client = client;
+        this.ttlMillis = ttlMillis;
+        this.staleMillis = staleMillis;
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    public static QuoteCache shared() {
+        return SHARED;
+    }
+
+    private static final class Entry {
+        FinnhubClient.Quote quote;
+        long fetchedAt;
+        CompletableFuture<FinnhubClient.Quote> inFlight;
+    }
+
+    public CompletableFuture<FinnhubClient.Quote> get(String symbol) {
+        long now = System.currentTimeMillis();
+        synchronized (entries) {
+            Entry entry = entries.get(symbol);
+            if (entry == null) {
+                entry = new Entry();
+                entries.put(symbol, entry);
+            }
+            if (entry.quote != null) {
+                long age = now - entry.fetchedAt;
+                if (age < ttlMillis) {
+                    hits.incrementAndGet();
+                    return CompletableFuture.completedFuture(entry.quote);
+                }
+                if (age < ttlMillis + staleMillis) {
+                    staleHits.incrementAndGet();
+                    if (entry.inFlight == null) {
+                        fetch(symbol, entry);
+                    }
+                    return CompletableFuture.completedFuture(entry.quote);
+                }
+            }
+            if (entry.inFlight != null) {
+                coalesced.incrementAndGet();
+                return entry.inFlight;
+            }
+            return fetch(symbol, entry);
+        }
+    }
+
+    // Called with the map locked. The entry is updated when the call
+    // completes, unless it was evicted or invalidated meanwhile.
+    private CompletableFuture<FinnhubClient.Quote> fetch(String symbol, Entry entry) {
+        calls.incrementAndGet();
+        CompletableFuture<FinnhubClient.Quote> call = client.quote(symbol);
+        entry.inFlight = call;
+        call.whenComplete((quote, error) -> {
+            synchronized (entries) {
+                if (entry.inFlight == call) {
+                    entry.inFlight = null;
+                }
+                if (error == null && quote != null) {
+                    entry.quote = quote;
+                    entry.fetchedAt = System.currentTimeMillis();
+                }
+            }
+        });
+        return call;
+    }
+
+    // The next lookup of the symbol goes to the API.
+    public void invalidate(String symbol) {
+        synchronized (entries) {
+            entries.remove(symbol);
+        }
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public long getCalls() {
+        return calls.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("QuoteCache[%d entries, %d fresh hits, %d stale hits, %d coalesced, %d calls]",
+                size(), hits.get(), staleHits.get(), coalesced.get(), calls.get());
+    }
+
+    // Lookup check against a FinnhubStubServer:
+    //   java QuoteCache <recordings> [lookups] [symbols] [latencyMs]
+    // Looks up the symbols round-robin, all at once, first straight through
+    // the client and then through a cache with the default settings.
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: QuoteCache <recordings> [lookups] [symbols] [latencyMs]");
+            return;
+        }
+        int lookups = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        int symbols = args.length > 2 ? Integer.parseInt(args[2]) : 8;
+        long latency = args.length > 3 ? Long.parseLong(args[3]) : 50;
+        try (FinnhubStubServer stub = new FinnhubStubServer(Paths.get(args[0]), 0, latency, 0)) {
+            FinnhubClient client = new FinnhubClient(stub.getBaseUrl(), "stub", FinnhubClient.DEFAULT_TIMEOUT,
+                    new IoExecutor(IoExecutor.DEFAULT_THREADS));
+            client.quote("SYM0").exceptionally(e -> null).join();
+            long before = stub.getServed();
+            long started = System.nanoTime();
+            CompletableFuture<?>[] direct = new CompletableFuture<?>[lookups];
+            for (int i = 0; i < lookups; i++) {
+                direct[i] = client.quote("SYM" + (i % symbols)).exceptionally(e -> null);
+            }
+            CompletableFuture.allOf(direct).join();
+            System.out.printf("direct: %d lookups in %.3f s, %d served%n",
+                    lookups, (System.nanoTime() - started) / 1e9, stub.getServed() - before);
+
+            QuoteCache cache = new QuoteCache(client, DEFAULT_TTL_MS, DEFAULT_STALE_MS, DEFAULT_MAX_ENTRIES);
+            before = stub.getServed();
+            started = System.nanoTime();
+            CompletableFuture<?>[] cached = new CompletableFuture<?>[lookups];
+            for (int i = 0; i < lookups; i++) {
+                cached[i] = cache.get("SYM" + (i % symbols)).exceptionally(e -> null);
+            }
+            CompletableFuture.allOf(cached).join();
+            System.out.printf("cached: %d lookups in %.3f s, %d served; %s%n",
+                    lookups, (System.nanoTime() - started) / 1e9, stub.getServed() - before, cache);
+        }
+    }
+}
@@ -8,11 +8,13 @@ import javafx.scene.text.Font;
 
 public class ReportsPanel {
     private final PortfolioManager portfolio;
+    private final AsyncPortfolioService service;
     private final Runnable updateCallback;
     private final VBox pane;
 
-    public ReportsPanel(PortfolioManager portfolio, Runnable updateCallback) {
+    public ReportsPanel(PortfolioManager portfolio, AsyncPortfolioService service, Runnable updateCallback) {
         this.portfolio = portfolio;
+        this.service = service;
         this.updateCallback = updateCallback;
         this.pane = createReportsPane();
     }
@@ -30,14 +32,7 @@ public class ReportsPanel {
 
         
         Button exportButton = new Button("Export to CSV");
-        exportButton.setOnAction(e -> {
-            try {
-                exportPortfolioToCSV("portfolio.csv");
-                showAlert("Success", "Portfolio exported to portfolio.csv");
-            } catch (IOException ex) {
-                showAlert("Error", "Export failed: " + ex.getMessage());
-            }
-        });
+        exportButton.setOnAction(e -> exportPortfolio("portfolio.csv"));
 
         
         TextField goalField = new TextField();
@@ -59,6 +54,31 @@ public class ReportsPanel {
     }
 
  
+    // The export includes goals, so it waits for the deferred goal fetch
+    // rather than letting getGoals() run it on the FX thread.
+    private void exportPortfolio(String fileName) {
+        if (!portfolio.goalsLoaded()) {
+            service.loadGoals().whenComplete((v, error) -> {
+                if (error != null) {
+                    showAlert("Error", "Export failed, goals could not be loaded: " + error.getMessage());
+                } else {
+                    writeExport(fileName);
+                }
+            });
+            return;
+        }
+        writeExport(fileName);
+    }
+
+    private void writeExport(String fileName) {
+        try {
+            exportPortfolioToCSV(fileName);
+            showAlert("Success", "Portfolio exported to " + fileName);
+        } catch (IOException ex) {
+            showAlert("Error", "Export failed: " + ex.getMessage());
+        }
+    }
+
     private void exportPortfolioToCSV(String fileName) throws IOException {
       
         FileWriter writer = new FileWriter(fileName, false);
@@ -67,12 +87,12 @@ public class ReportsPanel {
         writer.append("Asset Name,Asset Type,Current Price,Quantity,Value\n");
         ListADT<Asset> assets = portfolio.getAssets();
         for (int i = 0; i < assets.size(); i++) {
-            Asset asset = assets.get(i);
-            writer.append(asset.getName()).append(",");
-            writer.append(asset.getType()).append(",");
-            writer.append(String.format("%.2f", asset.getCurrentPrice())).append(",");
-            writer.append(String.valueOf(asset.getQuantity())).append(",");
-            writer.append(String.format("%.2f", asset.getValue())).append("\n");
+            Asset.Snapshot asset = assets.get(i).snapshot();
+            writer.append(asset.name).append(",");
+            writer.append(asset.type).append(",");
+            writer.append(String.format("%.2f", asset.price)).append(",");
+            writer.append(String.valueOf(asset.quantity)).append(",");
+            writer.append(String.format("%.2f", asset.value)).append("\n");
         }
         
        
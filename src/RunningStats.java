@@ -0,0 +1,67 @@
+// Welford's online mean/variance. remove() reverses an earlier add() so the
+// same object can follow a sliding window of samples.
+public class RunningStats {
+    private long count;
+    private double mean;
+    private double m2;
+    private double first;
+    private double last;
+
+    public void add(double x) {
+        if (count == 0) {
+            first = x;
+        }
+        count++;
+        double delta = x - mean;
+        mean += delta / count;
+        m2 += delta * (x - mean);
+        last = x;
+    }
+
+    public void remove(double x) {
+        if (count <= 1) {
+            clear();
+            return;
+        }
+        count--;
+        double delta = x - mean;
+        mean -= delta / count;
+        m2 -= delta * (x - mean);
+        if (m2 < 0) {
+            m2 = 0;
+        }
+    }
+
+    public void clear() {
+        count = 0;
+        mean = 0;
+        m2 = 0;
+        first = 0;
+        last = 0;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getMean() {
+        return mean;
+    }
+
+    public double getVariance() {
+        return count < 2 ? 0 : m2 / count;
+    }
+
+    public double getStdDev() {
+        return Math.sqrt(getVariance());
+    }
+
+    // First and last sample ever added; remove() does not move them.
+    public double getFirst() {
+        return first;
+    }
+
+    public double getLast() {
+        return last;
+    }
+}
@@ -1,48 +1,234 @@
+import java.util.Comparator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.ToDoubleFunction;
+
 public class SortingUtil {
+    private static final int INSERTION_SORT_THRESHOLD = 16;
+    private static final int PARALLEL_THRESHOLD = 1 << 13;
+
     public static <T extends Comparable<T>> ListADT<T> mergeSort(ListADT<T> list) {
-        if (list.size() <= 1) {
-            return list;
-        }
-        
-        int mid = list.size() / 2;
-        ListADT<T> left = new ArrayListImpl<>();
-        ListADT<T> right = new ArrayListImpl<>();
-        
-        for (int i = 0; i < list.size(); i++) {
-            if (i < mid) {
-                left.add(list.get(i));
+        return mergeSort(list, Comparator.naturalOrder());
+    }
+
+    public static <T> ListADT<T> mergeSort(ListADT<T> list, Comparator<? super T> comparator) {
+        int n = list.size();
+        Object[] items = new Object[n];
+        for (int i = 0; i < n; i++) {
+            items[i] = list.get(i);
+        }
+        sortObjects(items, new Object[n], comparator);
+        ListADT<T> result = new ArrayListImpl<>(n);
+        for (int i = 0; i < n; i++) {
+            @SuppressWarnings("unchecked")
+            T item = (T) items[i];
+            result.add(item);
+        }
+        return result;
+    }
+
+    public static <T> void sort(T[] items, Comparator<? super T> comparator) {
+        sortObjects(items, new Object[items.length], comparator);
+    }
+
+    // Stable merge sort of items using a caller-owned scratch array at least
+    // as long as items, so repeated sorts allocate nothing.
+    public static <T> void sort(T[] items, Object[] scratch, Comparator<? super T> comparator) {
+        if (scratch.length < items.length) {
+            throw new IllegalArgumentException("Scratch array is shorter than the input");
+        }
+        sortObjects(items, scratch, comparator);
+    }
+
+    // Decorate-sort-undecorate: each key is extracted once per element into a
+    // primitive column, then only an int[] permutation is sorted. Keys are
+    // compared in order, later keys breaking ties of earlier ones, and equal
+    // rows keep their original relative order.
+    @SafeVarargs
+    public static <T> ListADT<T> sortByKeys(ListADT<T> list, SortKey<? super T>... keys) {
+        int n = list.size();
+        double[][] columns = new double[keys.length][n];
+        for (int i = 0; i < n; i++) {
+            T item = list.get(i);
+            for (int k = 0; k < keys.length; k++) {
+                double key = keys[k].extractor.applyAsDouble(item);
+                columns[k][i] = keys[k].descending ? -key : key;
+            }
+        }
+        int[] order = sortedIndices(columns);
+        ListADT<T> result = new ArrayListImpl<>(n);
+        for (int i = 0; i < n; i++) {
+            result.add(list.get(order[i]));
+        }
+        return result;
+    }
+
+    // Returns the stable ascending order of rows described by parallel key columns.
+    public static int[] sortedIndices(double[]... columns) {
+        int n = columns.length == 0 ? 0 : columns[0].length;
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        if (n > 1 && columns.length > 0) {
+            indexMergeSort(order, new int[n], 0, n, columns);
+        }
+        return order;
+    }
+
+    private static void indexMergeSort(int[] a, int[] scratch, int lo, int hi, double[][] columns) {
+        if (hi - lo <= INSERTION_SORT_THRESHOLD) {
+            for (int i = lo + 1; i < hi; i++) {
+                int item = a[i];
+                int j = i - 1;
+                while (j >= lo && compareRows(columns, a[j], item) > 0) {
+                    a[j + 1] = a[j];
+                    j--;
+                }
+                a[j + 1] = item;
+            }
+            return;
+        }
+        int mid = (lo + hi) >>> 1;
+        indexMergeSort(a, scratch, lo, mid, columns);
+        indexMergeSort(a, scratch, mid, hi, columns);
+        if (compareRows(columns, a[mid - 1], a[mid]) <= 0) {
+            return;
+        }
+        System.arraycopy(a, lo, scratch, lo, mid - lo);
+        int i = lo, j = mid, k = lo;
+        while (i < mid && j < hi) {
+            if (compareRows(columns, scratch[i], a[j]) <= 0) {
+                a[k++] = scratch[i++];
             } else {
-                right.add(list.get(i));
+                a[k++] = a[j++];
+            }
+        }
+        while (i < mid) {
+            a[k++] = scratch[i++];
+        }
+    }
+
+    private static int compareRows(double[][] columns, int x, int y) {
+        for (double[] column : columns) {
+            double a = column[x];
+            double b = column[y];
+            if (a != b) {
+                int c = Double.compare(a, b);
+                if (c != 0) {
+                    return c;
+                }
             }
         }
-        
-        left = mergeSort(left);
-        right = mergeSort(right);
-        
-        return merge(left, right);
-    }
-    
-    private static <T extends Comparable<T>> ListADT<T> merge(ListADT<T> left, ListADT<T> right) {
-        ListADT<T> result = new ArrayListImpl<>();
-        int i = 0, j = 0;
-        
-        while (i < left.size() && j < right.size()) {
-            if (left.get(i).compareTo(right.get(j)) <= 0) {
-                result.add(left.get(i));
-                i++;
+        return 0;
+    }
+
+    public static final class SortKey<T> {
+        private final ToDoubleFunction<? super T> extractor;
+        private final boolean descending;
+
+        private SortKey(ToDoubleFunction<? super T> extractor, boolean descending) {
+            this.extractor = extractor;
+            this.descending = descending;
+        }
+
+        public static <T> SortKey<T> ascending(ToDoubleFunction<? super T> extractor) {
+            return new SortKey<>(extractor, false);
+        }
+
+        public static <T> SortKey<T> descending(ToDoubleFunction<? super T> extractor) {
+            return new SortKey<>(extractor, true);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void sortObjects(Object[] items, Object[] scratch, Comparator<?> comparator) {
+        Comparator<Object> cmp = (Comparator<Object>) comparator;
+        int n = items.length;
+        if (n < 2) {
+            return;
+        }
+        if (n >= PARALLEL_THRESHOLD && ForkJoinPool.getCommonPoolParallelism() > 1) {
+            ForkJoinPool.commonPool().invoke(new MergeSortTask(items, scratch, 0, n, cmp));
+        } else {
+            mergeSort(items, scratch, 0, n, cmp);
+        }
+    }
+
+    private static void mergeSort(Object[] a, Object[] scratch, int lo, int hi, Comparator<Object> cmp) {
+        if (hi - lo <= INSERTION_SORT_THRESHOLD) {
+            insertionSort(a, lo, hi, cmp);
+            return;
+        }
+        int mid = (lo + hi) >>> 1;
+        mergeSort(a, scratch, lo, mid, cmp);
+        mergeSort(a, scratch, mid, hi, cmp);
+        merge(a, scratch, lo, mid, hi, cmp);
+    }
+
+    private static void insertionSort(Object[] a, int lo, int hi, Comparator<Object> cmp) {
+        for (int i = lo + 1; i < hi; i++) {
+            Object item = a[i];
+            int j = i - 1;
+            while (j >= lo && cmp.compare(a[j], item) > 0) {
+                a[j + 1] = a[j];
+                j--;
+            }
+            a[j + 1] = item;
+        }
+    }
+
+    // Merges a[lo, mid) and a[mid, hi). Only the left run is copied out, into
+    // the matching slice of scratch, so concurrent merges never overlap.
+    private static void merge(Object[] a, Object[] scratch, int lo, int mid, int hi, Comparator<Object> cmp) {
+        if (cmp.compare(a[mid - 1], a[mid]) <= 0) {
+            return;
+        }
+        int leftLength = mid - lo;
+        System.arraycopy(a, lo, scratch, lo, leftLength);
+        int i = lo, j = mid, k = lo;
+        int leftEnd = lo + leftLength;
+        while (i < leftEnd && j < hi) {
+            if (cmp.compare(scratch[i], a[j]) <= 0) {
+                a[k++] = scratch[i++];
             } else {
-                result.add(right.get(j));
-                j++;
+                a[k++] = a[j++];
             }
         }
-        while (i < left.size()) {
-            result.add(left.get(i));
-            i++;
+        while (i < leftEnd) {
+            a[k++] = scratch[i++];
         }
-        while (j < right.size()) {
-            result.add(right.get(j));
-            j++;
+        for (int c = lo; c < leftEnd; c++) {
+            scratch[c] = null;
+        }
+    }
+
+    @SuppressWarnings("serial")
+    private static class MergeSortTask extends RecursiveAction {
+        private final Object[] a;
+        private final Object[] scratch;
+        private final int lo;
+        private final int hi;
+        private final Comparator<Object> cmp;
+
+        MergeSortTask(Object[] a, Object[] scratch, int lo, int hi, Comparator<Object> cmp) {
+            this.a = a;
+            this.scratch = scratch;
+            this.lo = lo;
+            this.hi = hi;
+            this.cmp = cmp;
+        }
+
+        @Override
+        protected void compute() {
+            if (hi - lo < PARALLEL_THRESHOLD) {
+                mergeSort(a, scratch, lo, hi, cmp);
+                return;
+            }
+            int mid = (lo + hi) >>> 1;
+            invokeAll(new MergeSortTask(a, scratch, lo, mid, cmp),
+                      new MergeSortTask(a, scratch, mid, hi, cmp));
+            merge(a, scratch, lo, mid, hi, cmp);
         }
-        return result;
     }
 }
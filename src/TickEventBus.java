@@ -0,0 +1,309 @@
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+// Carries price ticks from producers (the simulator, live quotes, replay)
+// to consumers (analytics, alerts, recording, the UI) through one
+// preallocated ring. A tick is four fields written into parallel arrays, so
+// publishing allocates nothing.
+//
+// Producers claim a sequence from a shared cursor and never wait for
+// consumers: the ring is lossy. Each consumer runs on its own thread with
+// its own sequence and wait strategy, and handles whatever has been
+// published since it last looked as one batch. A consumer that falls a
+// whole ring behind is told how many ticks it missed and carries on from
+// the recent half of the ring.
+//
+// Every slot has a stamp: 2*seq once tick seq is published there, 2*seq+1
+// while it is being written. Consumers read a slot like a seqlock and
+// re-check the stamp after copying the fields out.
+public class TickEventBus implements AutoCloseable {
+    public static final int DEFAULT_CAPACITY = Integer.getInteger("ppms.ticks.capacity", 1 << 16);
+
+    public static final int SOURCE_SIMULATOR = 0;
+    public static final int SOURCE_LIVE = 1;
+    public static final int SOURCE_REPLAY = 2;
+
+    // Called on the consumer's thread, in sequence order. endOfBatch is set
+    // on the last tick that was available when the batch started.
+    public interface TickHandler {
+        void onTick(String symbol, double price, long time, int source, boolean endOfBatch);
+
+        // Consumer.missed() keeps the running total.
+        default void onOverrun(long missed) {
+        }
+    }
+
+    // What a consumer does while nothing new is published. idle counts the
+    // empty polls since the last tick.
+    public interface WaitStrategy {
+        void idle(int idle);
+
+        // Lowest latency; keeps a core busy.
+        static WaitStrategy busySpin() {
+            return idle -> Thread.onSpinWait();
+        }
+
+        static WaitStrategy yielding() {
+            return idle -> {
+                if (idle < 100) {
+                    Thread.onSpinWait();
+                } else {
+                    Thread.yield();
+                }
+            };
+        }
+
+        // Spins briefly, then parks for doubling intervals up to maxNanos.
+        static WaitStrategy parking(long maxNanos) {
+            return idle -> {
+                if (idle < 100) {
+                    Thread.onSpinWait();
+                } else {
+                    LockSupport.parkNanos(Math.min(maxNanos, 1000L << Math.min(idle - 100, 20)));
+                }
+            };
+        }
+    }
+
+    private final int mask;
+    private final String[] symbols;
+    private final double[] prices;
+    private final long[] times;
+    private final int[] sources;
+    private final AtomicLongArray stamps;
+    // Next sequence to hand out.
+    private final AtomicLong cursor = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final CopyOnWriteArrayList<Consumer> consumers = new CopyOnWriteArrayList<>();
+    private final AtomicInteger threadCount = new AtomicInteger();
+
+    public TickEventBus() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    // Capacity is rounded up to a power of two.
+    public TickEventBus(int capacity) {
+        if (capacity < 2 || capacity > 1 << 30) throw new IllegalArgumentException("Invalid ring capacity: " + capacity);
+        int size = Integer.highestOneBit(capacity - 1) << 1;
+        this.mask = size - 1;
+        this.symbols = new String[size];
+        this.prices = new double[size];
+        this.times = new long[size];
+        this.sources = new int[size];
+        this.stamps = new AtomicLongArray(size);
+        // Each slot starts out as if it held the tick one lap before the
+        // first sequence that maps to it.
+        for (int slot = 0; slot < size; slot++) {
+            stamps.set(slot, 2L * (slot - size));
+        }
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+
+    // Sequences handed out so far.
+    public long published() {
+        return cursor.get();
+    }
+
+    // Ticks thrown away because a producer stalled mid-claim for a whole lap.
+    public long dropped() {
+        return dropped.get();
+    }
+
+    // Returns the tick's sequence, or -1 if it was dropped.
+    public long publish(String symbol, double price, long time, int source) {
+        long seq = cursor.getAndIncrement();
+        int slot = (int) seq & mask;
+        long writing = 2 * seq + 1;
+        while (true) {
+            long current = stamps.get(slot);
+            if (current >= writing) {
+                // A producer a lap ahead already owns the slot.
+                dropped.incrementAndGet();
+                return -1;
+            }
+            if ((current & 1) != 0) {
+                // A producer a lap behind is still writing; it is a few
+                // stores from done.
+                Thread.onSpinWait();
+                continue;
+            }
+            if (stamps.compareAndSet(slot, current, writing)) {
+                break;
+            }
+        }
+        symbols[slot] = symbol;
+        prices[slot] = price;
+        times[slot] = time;
+        sources[slot] = source;
+        stamps.setRelease(slot, 2 * seq);
+        return seq;
+    }
+
+    // Starts a consumer on its own daemon thread. It sees ticks published
+    // from now on.
+    public Consumer subscribe(String name, TickHandler handler, WaitStrategy wait) {
+        Consumer consumer = new Consumer(name, handler, wait, cursor.get());
+        consumers.add(consumer);
+        consumer.thread.start();
+        return consumer;
+    }
+
+    @Override
+    public void close() {
+        for (Consumer consumer : consumers) {
+            consumer.close();
+        }
+    }
+
+    public final class Consumer implements AutoCloseable {
+        private final String name;
+        private final TickHandler handler;
+        private final WaitStrategy wait;
+        private final Thread thread;
+        // Next sequence this consumer will read.
+        private final AtomicLong sequence;
+        private final AtomicLong missed = new AtomicLong();
+        private volatile boolean running = true;
+
+        private Consumer(String name, TickHandler handler, WaitStrategy wait, long start) {
+            this.name = name;
+            this.handler = handler;
+            this.wait = wait;
+            this.sequence = new AtomicLong(start);
+            this.thread = new Thread(this::run, "ticks-" + name + "-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getSequence() {
+            return sequence.get();
+        }
+
+        // Ticks published that this consumer has not handled yet.
+        public long lag() {
+            return Math.max(0, cursor.get() - sequence.get());
+        }
+
+        public long missed() {
+            return missed.get();
+        }
+
+        private void run() {
+            long next = sequence.get();
+            int idle = 0;
+            while (running) {
+                int slot = (int) next & mask;
+                long expected = 2 * next;
+                long stamp = stamps.getAcquire(slot);
+                if (stamp == expected) {
+                    String symbol = symbols[slot];
+                    double price = prices[slot];
+                    long time = times[slot];
+                    int source = sources[slot];
+                    VarHandle.acquireFence();
+                    if (stamps.get(slot) == expected) {
+                        boolean endOfBatch = stamps.getAcquire((int) (next + 1) & mask) != expected + 2;
+                        try {
+                            handler.onTick(symbol, price, time, source, endOfBatch);
+                        } catch (RuntimeException e) {
+                            System.err.println("Tick consumer " + name + " failed: " + e);
+                        }
+                        sequence.lazySet(++next);
+                        idle = 0;
+                        continue;
+                    }
+                    stamp = stamps.get(slot);
+                }
+                if (stamp > expected + 1) {
+                    next = skipAhead(next);
+                    continue;
+                }
+                // Not published yet, or being written right now.
+                wait.idle(idle);
+                if (idle < Integer.MAX_VALUE) {
+                    idle++;
+                }
+            }
+        }
+
+        // Lapped: the slot already holds a later tick. Resume in the recent
+        // half of the ring so the next few publishes do not lap us again.
+        private long skipAhead(long next) {
+            long resume = Math.max(next + 1, cursor.get() - (capacity() >> 1));
+            long skipped = resume - next;
+            missed.addAndGet(skipped);
+            sequence.lazySet(resume);
+            try {
+                handler.onOverrun(skipped);
+            } catch (RuntimeException e) {
+                System.err.println("Tick consumer " + name + " failed: " + e);
+            }
+            return resume;
+        }
+
+        @Override
+        public void close() {
+            running = false;
+            LockSupport.unpark(thread);
+            consumers.remove(this);
+        }
+    }
+
+    // Throughput check: java TickEventBus [producers] [ticksPerProducer] [capacity]
+    // Runs a busy-spinning consumer alongside one that sleeps on every
+    // batch, to show producers are not held back by the slow one.
+    public static void main(String[] args) throws Exception {
+        int producerCount = args.length > 0 ? Integer.parseInt(args[0]) : 2;
+        long perProducer = args.length > 1 ? Long.parseLong(args[1]) : 5_000_000;
+        int capacity = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_CAPACITY;
+        try (TickEventBus bus = new TickEventBus(capacity)) {
+            AtomicLong fastSeen = new AtomicLong();
+            AtomicLong slowSeen = new AtomicLong();
+            Consumer fast = bus.subscribe("fast", (symbol, price, time, source, end) -> fastSeen.incrementAndGet(),
+                    WaitStrategy.busySpin());
+            Consumer slow = bus.subscribe("slow", (symbol, price, time, source, end) -> {
+                slowSeen.incrementAndGet();
+                if (end) {
+                    LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+                }
+            }, WaitStrategy.parking(TimeUnit.MILLISECONDS.toNanos(1)));
+            String[] names = new String[64];
+            for (int i = 0; i < names.length; i++) {
+                names[i] = "SIM" + i;
+            }
+            Thread[] producers = new Thread[producerCount];
+            long started = System.nanoTime();
+            for (int p = 0; p < producerCount; p++) {
+                producers[p] = new Thread(() -> {
+                    for (long i = 0; i < perProducer; i++) {
+                        bus.publish(names[(int) i & (names.length - 1)], i, i, SOURCE_SIMULATOR);
+                    }
+                });
+                producers[p].start();
+            }
+            for (Thread producer : producers) {
+                producer.join();
+            }
+            double seconds = (System.nanoTime() - started) / 1e9;
+            long total = producerCount * perProducer;
+            while (fast.lag() > 0 && System.nanoTime() - started < TimeUnit.SECONDS.toNanos(10)) {
+                Thread.sleep(1);
+            }
+            System.out.printf("%d ticks from %d producer(s) in %.3f s: %.0f ticks/s%n",
+                    total, producerCount, seconds, total / seconds);
+            System.out.printf("fast consumer: %d handled, %d missed; slow consumer: %d handled, %d missed; %d dropped%n",
+                    fastSeen.get(), fast.missed(), slowSeen.get(), slow.missed(), bus.dropped());
+        }
+    }
+}
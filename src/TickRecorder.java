@@ -0,0 +1,51 @@
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// Persistence consumer: appends every tick it is handed to a file of
+// time,symbol,price,source lines, the format TickReplay reads back. The
+// file is flushed at the end of each batch rather than per tick.
+public class TickRecorder implements TickEventBus.TickHandler, Closeable {
+    private final Path file;
+    private final BufferedWriter out;
+    private final StringBuilder line = new StringBuilder(64);
+    private boolean failed;
+    private boolean closed;
+
+    public TickRecorder(Path file) throws IOException {
+        this.file = file;
+        this.out = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    @Override
+    public synchronized void onTick(String symbol, double price, long time, int source, boolean endOfBatch) {
+        if (failed || closed) {
+            return;
+        }
+        line.setLength(0);
+        line.append(time).append(',').append(symbol).append(',').append(price).append(',').append(source).append('\n');
+        try {
+            out.append(line);
+            if (endOfBatch) {
+                out.flush();
+            }
+        } catch (IOException e) {
+            // One message, not one per tick.
+            failed = true;
+            System.err.println("Stopped recording ticks to " + file + ": " + e.getMessage());
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            out.close();
+        }
+    }
+}
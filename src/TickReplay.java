@@ -0,0 +1,82 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+// Replay producer: publishes the ticks in a TickRecorder file again, as
+// SOURCE_REPLAY and stamped with the time they are replayed. The recorded
+// gaps between ticks are kept, divided by speed; a speed of 0 replays as
+// fast as the bus takes them.
+public class TickReplay {
+    private final TickEventBus bus;
+    private final Path file;
+    private final double speed;
+    private final AtomicLong replayed = new AtomicLong();
+    private Thread thread;
+
+    public TickReplay(TickEventBus bus, Path file, double speed) {
+        if (speed < 0) throw new IllegalArgumentException("speed must not be negative");
+        this.bus = bus;
+        this.file = file;
+        this.speed = speed;
+    }
+
+    public synchronized void start() {
+        if (thread != null) throw new IllegalStateException("Replay already started");
+        thread = new Thread(this::run, "tick-replay");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public synchronized void stop() {
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    public long getReplayed() {
+        return replayed.get();
+    }
+
+    private void run() {
+        long startedNanos = System.nanoTime();
+        long firstTime = Long.MIN_VALUE;
+        int skipped = 0;
+        try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = in.readLine()) != null && !Thread.currentThread().isInterrupted()) {
+                String[] fields = line.split(",");
+                long time;
+                double price;
+                try {
+                    time = Long.parseLong(fields[0]);
+                    price = Double.parseDouble(fields[2]);
+                } catch (RuntimeException e) {
+                    skipped++;
+                    continue;
+                }
+                if (firstTime == Long.MIN_VALUE) {
+                    firstTime = time;
+                }
+                if (speed > 0) {
+                    long due = startedNanos + (long) (TimeUnit.MILLISECONDS.toNanos(time - firstTime) / speed);
+                    long wait;
+                    while ((wait = due - System.nanoTime()) > 0 && !Thread.currentThread().isInterrupted()) {
+                        LockSupport.parkNanos(wait);
+                    }
+                }
+                bus.publish(fields[1], price, System.currentTimeMillis(), TickEventBus.SOURCE_REPLAY);
+                replayed.incrementAndGet();
+            }
+        } catch (IOException e) {
+            System.err.println("Tick replay of " + file + " failed: " + e.getMessage());
+        }
+        if (skipped > 0) {
+            System.err.println("Tick replay skipped " + skipped + " malformed line(s) in " + file);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+// One user's portfolio inside a PortfolioService. PortfolioManager is not
+// thread-safe, so requests for the same user take turns on the session lock;
+// requests for different users never contend.
+public class UserSession {
+    private final String username;
+    private final PortfolioManager portfolio;
+    private final PriceBook prices;
+    private final ReentrantLock lock = new ReentrantLock();
+    private volatile long lastAccess = System.currentTimeMillis();
+    // Guarded by lock.
+    private long priceSequence = -1;
+    private boolean loaded;
+    private boolean closed;
+
+    public UserSession(String username, PortfolioManager portfolio, PriceBook prices) {
+        this.username = username;
+        this.portfolio = portfolio;
+        this.prices = prices;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public long getLastAccess() {
+        return lastAccess;
+    }
+
+    // Takes the lock, or returns false if the session was closed meanwhile;
+    // the caller then asks the registry for a fresh one.
+    boolean enter() {
+        lock.lock();
+        if (closed) {
+            lock.unlock();
+            return false;
+        }
+        return true;
+    }
+
+    void exit() {
+        lock.unlock();
+    }
+
+    // Runs a request between enter() and exit(). The holdings are read on
+    // the first request; goals wait until the request asks for them.
+    <T> T call(Function<PortfolioManager, T> request) {
+        if (!lock.isHeldByCurrentThread()) throw new IllegalStateException("Session not entered");
+        if (!loaded) {
+            portfolio.applyHoldings(portfolio.fetchHoldings(username));
+            loaded = true;
+        }
+        priceSequence = prices.applyTo(portfolio, priceSequence);
+        lastAccess = System.currentTimeMillis();
+        return request.apply(portfolio);
+    }
+
+    // Closes the session if nobody has used it since the cutoff and nobody
+    // is using it now.
+    boolean closeIfIdle(long cutoff) {
+        if (lastAccess >= cutoff || !lock.tryLock()) {
+            return false;
+        }
+        try {
+            if (closed || lastAccess >= cutoff) {
+                return false;
+            }
+            release();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void close() {
+        lock.lock();
+        try {
+            if (!closed) {
+                release();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void release() {
+        closed = true;
+        try {
+            portfolio.flushOwn();
+        } catch (RuntimeException e) {
+            System.err.println("Could not flush portfolio for " + username + ": " + e.getMessage());
+        }
+    }
+}
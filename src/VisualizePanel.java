@@ -1,4 +1,7 @@
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import javafx.application.Platform;
 import javafx.animation.ScaleTransition;
 import javafx.geometry.Insets;
 import javafx.scene.chart.BarChart;
@@ -13,17 +16,20 @@ import javafx.util.Duration;
 
 public class VisualizePanel {
     private final PortfolioManager portfolio;
-    private final HeapADT<Asset> heap;
-    private final GraphADT graph;
+    private final IndexedHeapADT<Asset> heap;
+    // Built from the chosen matrix by "Build Correlation Graph".
+    private GraphADT graph;
+    private final CorrelationEngine correlations;
     
     private final SplitPane pane;
     private TextArea heapDetails;
     private TextArea correlationDetails;
+    private CheckBox fullHistory;
     
-    public VisualizePanel(PortfolioManager portfolio, HeapADT<Asset> heap, GraphADT graph) {
+    public VisualizePanel(PortfolioManager portfolio, IndexedHeapADT<Asset> heap, CorrelationEngine correlations) {
         this.portfolio = portfolio;
         this.heap = heap;
-        this.graph = graph;
+        this.correlations = correlations;
         this.pane = createVisualizePane();
     }
     
@@ -78,20 +84,22 @@ public class VisualizePanel {
         matrixScroll.setPrefHeight(300);
         matrixScroll.setStyle("-fx-border-color: black;");
         
+        fullHistory = new CheckBox("Use full price history");
+        
         Button showMatrixButton = new Button("Show Correlation Matrix");
-        showMatrixButton.setOnAction(e -> {
-            GridPane matrix = buildCorrelationMatrix();
+        showMatrixButton.setOnAction(e -> currentCorrelations().thenAccept(correlationMatrix -> {
+            GridPane matrix = buildCorrelationMatrix(correlationMatrix);
             matrixScroll.setContent(matrix);
-        });
+        }));
         
         Button buildGraphButton = new Button("Build Correlation Graph");
-        buildGraphButton.setOnAction(e -> {
-            updateCorrelations();
+        buildGraphButton.setOnAction(e -> currentCorrelations().thenAccept(correlationMatrix -> {
+            updateCorrelations(correlationMatrix);
             Alert alert = new Alert(Alert.AlertType.INFORMATION);
             alert.setHeaderText("Graph Updated");
             alert.setContentText("Graph now has edges for assets with correlation > 0.5");
             alert.showAndWait();
-        });
+        }));
         
         correlationDetails = new TextArea();
         correlationDetails.setEditable(false);
@@ -99,10 +107,33 @@ public class VisualizePanel {
         correlationDetails.setText("Click 'Show Correlation Matrix' to view asset correlations.\n" +
                 "Click 'Build Correlation Graph' to store them in the adjacency structure.");
         
-        corrSection.getChildren().addAll(label, matrixScroll, showMatrixButton, buildGraphButton, correlationDetails);
+        corrSection.getChildren().addAll(label, matrixScroll, fullHistory, showMatrixButton, buildGraphButton, correlationDetails);
         return corrSection;
     }
     
+    // The rolling window is read straight from the engine. The full history
+    // (every retained price of every holding) is recomputed in one batch by
+    // BlockedCorrelation off the FX thread; callbacks run on the FX thread.
+    private CompletableFuture<CorrelationMatrix> currentCorrelations() {
+        if (!fullHistory.isSelected()) {
+            return CompletableFuture.completedFuture(correlations.matrix());
+        }
+        correlationDetails.setText("Computing correlations over the full price history...");
+        ListADT<Asset> assets = portfolio.getAssetsSnapshot();
+        CompletableFuture<CorrelationMatrix> result = new CompletableFuture<>();
+        CompletableFuture.supplyAsync(() -> BlockedCorrelation.compute(assets, PriceHistory.DEFAULT_CAPACITY),
+                ForkJoinPool.commonPool())
+                .whenComplete((matrix, error) -> Platform.runLater(() -> {
+                    if (error != null) {
+                        correlationDetails.setText("Could not compute correlations: " + error.getMessage());
+                        result.completeExceptionally(error);
+                    } else {
+                        result.complete(matrix);
+                    }
+                }));
+        return result;
+    }
+    
     private void updateRiskChart(BarChart<String, Number> chart, String topNText) {
         chart.getData().clear();
         XYChart.Series<String, Number> series = new XYChart.Series<>();
@@ -117,19 +148,17 @@ public class VisualizePanel {
             topN = 5;
         }
         
-        ListADT<Asset> assets = portfolio.getAssets();
-        HeapADT<Asset> tempHeap = new MaxHeapImpl<>();
-        for (int i = 0; i < assets.size(); i++) {
-            tempHeap.add(assets.get(i));
-        }
+        ListADT<Asset> riskiest = heap.top(topN);
         
         StringBuilder details = new StringBuilder("Riskiest Assets:\n");
         
-        for (int i = 0; i < Math.min(topN, assets.size()); i++) {
-            Asset asset = tempHeap.remove();
+        for (int i = 0; i < riskiest.size(); i++) {
+            Asset asset = riskiest.get(i);
             if (asset != null) {
-                double vol = asset.getVolatility();
-                double drawdown = calculateMaxDrawdown(asset);
+                Asset.Snapshot state = asset.snapshot();
+                double vol = state.volatility;
+                double drawdown = state.maxDrawdown;
+                double currentDrawdown = state.currentDrawdown;
                 
                 XYChart.Data<String, Number> barData = new XYChart.Data<>(asset.getName(), vol);
                 barData.nodeProperty().addListener((obs, oldNode, newNode) -> {
@@ -137,7 +166,7 @@ public class VisualizePanel {
                         String barColor = pickBarColor(vol);
                         newNode.setStyle("-fx-bar-fill: " + barColor + ";");
                         
-                        Tooltip tooltip = new Tooltip(String.format("Asset: %s\nVolatility: %.2f\nMax Drawdown: %.2f%%", asset.getName(), vol, drawdown));
+                        Tooltip tooltip = new Tooltip(String.format("Asset: %s\nVolatility: %.2f\nMax Drawdown: %.2f%%\nCurrent Drawdown: %.2f%%", asset.getName(), vol, drawdown, currentDrawdown));
                         Tooltip.install(newNode, tooltip);
                         
                         newNode.setScaleY(0);
@@ -174,26 +203,7 @@ public class VisualizePanel {
             return "red";
     }
     
-    private double calculateMaxDrawdown(Asset asset) {
-        List<Double> history = asset.getPriceHistory();
-        if (history.size() < 2)
-            return 0;
-        double peak = history.get(0);
-        double trough = peak;
-        double maxDrawdown = 0;
-        for (double price : history) {
-            if (price > peak)
-                peak = price;
-            else if (price < trough)
-                trough = price;
-            double drawdown = (peak - trough) / peak * 100;
-            if (drawdown > maxDrawdown)
-                maxDrawdown = drawdown;
-        }
-        return maxDrawdown;
-    }
-    
-    private GridPane buildCorrelationMatrix() {
+    private GridPane buildCorrelationMatrix(CorrelationMatrix correlationMatrix) {
         correlationDetails.clear();
         
         GridPane matrix = new GridPane();
@@ -219,7 +229,7 @@ public class VisualizePanel {
             for (int col = 0; col < n; col++) {
                 Asset a1 = assets.get(row);
                 Asset a2 = assets.get(col);
-                double corr = computeCorrelation(a1, a2);
+                double corr = correlationMatrix.get(a1.getName(), a2.getName());
                 
                 Label cell = new Label(String.format("%.2f", corr));
                 cell.setPrefWidth(60);
@@ -236,39 +246,6 @@ public class VisualizePanel {
         return matrix;
     }
     
-    private double computeCorrelation(Asset a1, Asset a2) {
-        List<Double> h1 = a1.getPriceHistory();
-        List<Double> h2 = a2.getPriceHistory();
-        int size = Math.min(h1.size(), h2.size());
-        if (size < 2)
-            return 0;
-        double[] x = new double[size];
-        double[] y = new double[size];
-        for (int i = 0; i < size; i++) {
-            x[i] = h1.get(i);
-            y[i] = h2.get(i);
-        }
-        double meanX = 0, meanY = 0;
-        for (int i = 0; i < size; i++) {
-            meanX += x[i];
-            meanY += y[i];
-        }
-        meanX /= size;
-        meanY /= size;
-        double numerator = 0, denomX = 0, denomY = 0;
-        for (int i = 0; i < size; i++) {
-            double dx = x[i] - meanX;
-            double dy = y[i] - meanY;
-            numerator += dx * dy;
-            denomX += dx * dx;
-            denomY += dy * dy;
-        }
-        double denominator = Math.sqrt(denomX * denomY);
-        if (denominator == 0)
-            return 0;
-        return numerator / denominator;
-    }
-    
     private Color correlationToColor(double corr) {
         double fraction = (corr + 1) / 2.0;
         return Color.RED.interpolate(Color.GREEN, fraction);
@@ -281,22 +258,9 @@ public class VisualizePanel {
         return String.format("rgb(%d,%d,%d)", r, g, b);
     }
     
-    private void updateCorrelations() {
+    private void updateCorrelations(CorrelationMatrix correlationMatrix) {
         ListADT<Asset> assets = portfolio.getAssets();
-        graph.clear();
-        for (int i = 0; i < assets.size(); i++) {
-            graph.addVertex(assets.get(i).getName());
-        }
-        for (int i = 0; i < assets.size(); i++) {
-            for (int j = i + 1; j < assets.size(); j++) {
-                Asset a1 = assets.get(i);
-                Asset a2 = assets.get(j);
-                double corr = computeCorrelation(a1, a2);
-                if (corr > 0.5) {
-                    graph.addEdge(a1.getName(), a2.getName());
-                }
-            }
-        }
+        graph = correlationMatrix.toGraph(0.5);
         StringBuilder sb = new StringBuilder();
         sb.append("Graph updated with edges for correlation > 0.5.\n");
         sb.append("Total Vertices: ").append(assets.size()).append("\n\n");
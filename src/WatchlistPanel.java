@@ -1,11 +1,11 @@
 import java.awt.Desktop;
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
 import java.net.URI;
-import java.net.URL;
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import javafx.application.Platform;
 import javafx.animation.FadeTransition;
 import javafx.animation.ScaleTransition;
 import javafx.geometry.Insets;
@@ -15,8 +15,6 @@ import javafx.scene.control.cell.PropertyValueFactory;
 import javafx.scene.layout.*;
 import javafx.scene.text.Font;
 import javafx.util.Duration;
-import com.google.gson.Gson;
-import com.google.gson.annotations.SerializedName;
 
 public class WatchlistPanel {
 
@@ -27,8 +25,9 @@ public class WatchlistPanel {
     private TableView<Asset> watchlistTable;
     private TextArea newsArea;
     private TextField filterField;
+    // Bumped per news request; an answer for an older request is dropped.
+    private int newsRequest;
 
-    private static final String FINNHUB_API_KEY = "cvstuepr01qhup0t2av0cvstuepr01qhup0t2avg";
 
     public WatchlistPanel(PortfolioManager portfolio, Runnable updateCallback) {
         this.portfolio = portfolio;
@@ -149,6 +148,7 @@ public class WatchlistPanel {
             if (selected != null) {
                 portfolio.removeFromWatchlist(selected.getName());
                 updateWatchlistTable();
+                newsRequest++;
                 newsArea.clear();
             } else {
                 showAlert("Warning", "No asset selected to remove.");
@@ -217,82 +217,58 @@ public class WatchlistPanel {
         }
     }
 
+    // The request runs on the I/O pool; the text area says so until the
+    // answer arrives.
     private void updateNewsArea(String assetName) {
-        try {
-            
-            long twoWeeksMillis = 14L * 24 * 60 * 60 * 1000;
-            Date fromDateObj = new Date(System.currentTimeMillis() - twoWeeksMillis);
-            SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd");
-            String from = sdf.format(fromDateObj);
-            String to = sdf.format(new Date());
-
-            
-            System.out.println("Fetching news for: " + assetName);
-            System.out.println("From: " + from + ", To: " + to);
-
-           
-            String json = fetchCompanyNews(assetName, from, to, FINNHUB_API_KEY);
-            System.out.println("Received JSON: " + json);  
-            
-            if (json == null || json.isEmpty()) {
-                newsArea.setText("No news found or error for: " + assetName);
-                return;
-            }
-
-            Gson gson = new Gson();
-            FinnhubNewsArticle[] articles = gson.fromJson(json, FinnhubNewsArticle[].class);
+        int request = ++newsRequest;
+        newsArea.setText("Loading news for " + assetName + "...");
+        loadNews(assetName)
+            .whenCompleteAsync((text, error) -> {
+                if (request != newsRequest) {
+                    return;
+                }
+                if (error != null) {
+                    Throwable cause = error instanceof CompletionException && error.getCause() != null
+                            ? error.getCause() : error;
+                    cause.printStackTrace();
+                    newsArea.setText("Failed to fetch news for " + assetName + ": " + cause.getMessage());
+                } else {
+                    newsArea.setText(text);
+                }
+            }, Platform::runLater);
+    }
 
-            if (articles == null || articles.length == 0) {
-                newsArea.setText("No recent news for " + assetName + ".");
-                return;
-            }
+    private CompletableFuture<String> loadNews(String assetName) {
+        long twoWeeksMillis = 14L * 24 * 60 * 60 * 1000;
+        Date fromDateObj = new Date(System.currentTimeMillis() - twoWeeksMillis);
+        SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd");
+        String from = sdf.format(fromDateObj);
+        String to = sdf.format(new Date());
 
-            StringBuilder sb = new StringBuilder("Recent News for " + assetName + ":\n");
-            for (int i = 0; i < articles.length && i < 5; i++) {
-                FinnhubNewsArticle art = articles[i];
-                Date dateObj = new Date(art.datetime * 1000L);
-                sb.append(String.format(
-                    "\nHeadline: %s\nDate: %s\nSource: %s\nURL: %s\n",
-                    art.headline,
-                    sdf.format(dateObj),
-                    art.source,
-                    art.url
-                ));
-            }
-            newsArea.setText(sb.toString());
+        System.out.println("Fetching news for: " + assetName);
+        System.out.println("From: " + from + ", To: " + to);
 
-        } catch (Exception e) {
-            e.printStackTrace();
-            newsArea.setText("Failed to fetch news for " + assetName + ": " + e.getMessage());
-        }
+        return FinnhubClient.shared().companyNews(assetName, from, to, 5)
+            .thenApply(articles -> formatNews(assetName, articles, sdf));
     }
 
-    private String fetchCompanyNews(String symbol, String from, String to, String apiKey) throws Exception {
-        String urlStr = String.format(
-            "https://finnhub.io/api/v1/company-news?symbol=%s&from=%s&to=%s&token=%s",
-            symbol, from, to, apiKey
-        );
-        
-        System.out.println("Request URL: " + urlStr); 
-
-        URL url = new URL(urlStr);
-        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-        conn.setRequestMethod("GET");
-
-        int status = conn.getResponseCode();
-        if (status != 200) {
-            throw new RuntimeException("Finnhub request failed with status: " + status);
+    private String formatNews(String assetName, List<FinnhubClient.NewsArticle> articles, SimpleDateFormat sdf) {
+        if (articles == null || articles.isEmpty()) {
+            return "No recent news for " + assetName + ".";
         }
 
-        BufferedReader in = new BufferedReader(new InputStreamReader(conn.getInputStream()));
-        StringBuilder response = new StringBuilder();
-        String line;
-        while ((line = in.readLine()) != null) {
-            response.append(line);
+        StringBuilder sb = new StringBuilder("Recent News for " + assetName + ":\n");
+        for (FinnhubClient.NewsArticle art : articles) {
+            Date dateObj = new Date(art.datetime * 1000L);
+            sb.append(String.format(
+                "\nHeadline: %s\nDate: %s\nSource: %s\nURL: %s\n",
+                art.headline,
+                sdf.format(dateObj),
+                art.source,
+                art.url
+            ));
         }
-        in.close();
-        
-        return response.toString();
+        return sb.toString();
     }
 
 
@@ -309,19 +285,4 @@ public class WatchlistPanel {
         } catch (Exception e) {
             showAlert("Open Link Error", e.getMessage());
         }
-    }
-
-   
-    private static class FinnhubNewsArticle {
-        public String category;
-        public long datetime;
-        public String headline;
-        public String id;
-        @SerializedName("image")
-        public String imageUrl;
-        public String related;
-        public String source;
-        public String summary;
-        public String url;
-    }
-}
+    }}
@@ -0,0 +1,392 @@
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.WriteModel;
+import org.bson.Document;
+
+// Buffers portfolio mutations per user and writes them to the "portfolio"
+// collection in one ordered bulkWrite. Mutations to the same symbol inside a
+// window collapse to their net effect, so a batch is at most one arrayFilters
+// $set of changed holdings, one $pull, one $push of new holdings and one
+// $push of goals, however many edits it carries.
+//
+// Every write is guarded by the document's version counter and increments
+// it. A write that matches nothing means someone else changed the document;
+// the batch's futures then fail with a conflict, so the caller undoes the
+// edits, and the user is marked stale so it reloads the stored copy.
+//
+// Layouts that do not embed holdings pass a Sink, which receives each
+// coalesced batch instead.
+public class WriteBehindQueue {
+
+    // Receives a user's batch once per flush. Holdings added or changed are
+    // keyed by symbol; a symbol appears in at most one of the two.
+    public interface Sink {
+        void write(String username, Map<String, Document> upserts, List<String> deletes, List<Document> goals);
+    }
+
+    public static final long DEFAULT_WINDOW_MS = Long.getLong("ppms.writeBehind.windowMs", 50);
+    public static final int DEFAULT_MAX_PENDING = Integer.getInteger("ppms.writeBehind.maxPending", 500);
+
+    private static final int ADD = 1;
+    private static final int SET = 2;
+    private static final int DELETE = 3;
+    // Pull the stored holding, then push the new one.
+    private static final int REPLACE = 4;
+
+    private final long windowMs;
+    private final int maxPending;
+    private final Sink sink;
+    private final Map<String, Batch> batches = new LinkedHashMap<>();
+    private final Map<String, Long> versions = new HashMap<>();
+    private final Set<String> stale = new HashSet<>();
+    // Held across a user's bulkWrite so the user's batches reach the server
+    // in order. Striped by username hash: a fixed set, however many users
+    // come and go, and two users only wait on each other when they share
+    // a stripe.
+    private static final int FLUSH_STRIPES = 64;
+    private final Object[] flushLocks = new Object[FLUSH_STRIPES];
+    private final ScheduledExecutorService scheduler;
+    private int pending;
+    private boolean closed;
+
+    public WriteBehindQueue() {
+        this(DEFAULT_WINDOW_MS, DEFAULT_MAX_PENDING, null);
+    }
+
+    public WriteBehindQueue(Sink sink) {
+        this(DEFAULT_WINDOW_MS, DEFAULT_MAX_PENDING, sink);
+    }
+
+    public WriteBehindQueue(long windowMs, int maxPending, Sink sink) {
+        if (windowMs < 0 || maxPending < 1) throw new IllegalArgumentException("Invalid write-behind settings");
+        this.windowMs = windowMs;
+        this.maxPending = maxPending;
+        this.sink = sink;
+        for (int i = 0; i < FLUSH_STRIPES; i++) {
+            flushLocks[i] = new Object();
+        }
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "portfolio-write-behind");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // Records the version read with the user's document. Writes for a user
+    // with no recorded version are not guarded.
+    public synchronized void setVersion(String username, long version) {
+        versions.put(username, version);
+        stale.remove(username);
+    }
+
+    // Appends a holding the stored document does not have yet.
+    public CompletableFuture<Void> addHolding(String username, String symbol, double shares, double value) {
+        Document stockDoc = stockDoc(symbol, shares, value);
+        return enqueue(username, batch -> batch.apply(symbol, ADD, stockDoc));
+    }
+
+    // Overwrites the shares and value of a stored holding in place.
+    public CompletableFuture<Void> setHolding(String username, String symbol, double shares, double value) {
+        Document stockDoc = stockDoc(symbol, shares, value);
+        return enqueue(username, batch -> batch.apply(symbol, SET, stockDoc));
+    }
+
+    // Buffers a whole import as one mutation with one future.
+    public CompletableFuture<Void> putHoldings(String username, List<PortfolioData.Holding> added,
+                                               List<PortfolioData.Holding> changed) {
+        return enqueue(username, batch -> {
+            for (PortfolioData.Holding h : added) {
+                batch.apply(h.symbol, ADD, stockDoc(h.symbol, h.shares, h.value));
+            }
+            for (PortfolioData.Holding h : changed) {
+                batch.apply(h.symbol, SET, stockDoc(h.symbol, h.shares, h.value));
+            }
+        });
+    }
+
+    public CompletableFuture<Void> removeHolding(String username, String symbol) {
+        return enqueue(username, batch -> batch.apply(symbol, DELETE, null));
+    }
+
+    public CompletableFuture<Void> addGoal(String username, Document goalDoc) {
+        return enqueue(username, batch -> batch.goals.add(goalDoc));
+    }
+
+    public synchronized int pendingCount() {
+        return pending;
+    }
+
+    // True once, after a write for the user found the document changed.
+    public synchronized boolean consumeStale(String username) {
+        return stale.remove(username);
+    }
+
+    // Writes everything buffered for the user and waits for the result.
+    public void flush(String username) {
+        synchronized (flushLocks[Math.floorMod(username.hashCode(), FLUSH_STRIPES)]) {
+            Batch batch;
+            synchronized (this) {
+                batch = batches.remove(username);
+                if (batch != null) {
+                    pending -= batch.size;
+                }
+            }
+            if (batch != null) {
+                write(username, batch);
+            }
+        }
+    }
+
+    public void flushAll() {
+        String[] users;
+        synchronized (this) {
+            users = batches.keySet().toArray(new String[0]);
+        }
+        for (String user : users) {
+            flush(user);
+        }
+    }
+
+    // Flushes outstanding writes and stops the background thread. Later
+    // mutations are rejected.
+    public void shutdown() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        flushAll();
+        scheduler.shutdown();
+    }
+
+    private static Document stockDoc(String symbol, double shares, double value) {
+        return new Document("symbol", symbol)
+                .append("shares", shares)
+                .append("value", value);
+    }
+
+    private CompletableFuture<Void> enqueue(String username, Consumer<Batch> mutation) {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        boolean overflow;
+        synchronized (this) {
+            if (closed) throw new IllegalStateException("Write-behind queue is shut down");
+            Batch batch = batches.get(username);
+            if (batch == null) {
+                batch = new Batch();
+                batches.put(username, batch);
+                scheduler.schedule(() -> flushQuietly(username), windowMs, TimeUnit.MILLISECONDS);
+            }
+            mutation.accept(batch);
+            batch.waiters.add(done);
+            batch.size++;
+            pending++;
+            overflow = pending >= maxPending;
+        }
+        // Back-pressure: once the buffer is full the caller pays for the flush.
+        if (overflow) {
+            flush(username);
+        }
+        return done;
+    }
+
+    private void flushQuietly(String username) {
+        try {
+            flush(username);
+        } catch (RuntimeException e) {
+            System.err.println("Write-behind flush failed for " + username + ": " + e.getMessage());
+        }
+    }
+
+    // A version conflict is not a failure of the flush itself, so it only
+    // fails the batch's waiters: the UI undoes the edits and says so, and
+    // the stale mark makes it reload what is stored.
+    private void write(String username, Batch batch) {
+        boolean conflict = false;
+        try {
+            if (sink != null) {
+                writeToSink(username, batch);
+            } else {
+                conflict = !writeEmbedded(username, batch);
+            }
+        } catch (RuntimeException e) {
+            for (CompletableFuture<Void> waiter : batch.waiters) {
+                waiter.completeExceptionally(e);
+            }
+            throw e;
+        }
+        if (conflict) {
+            IllegalStateException e = new IllegalStateException(
+                    "Portfolio for " + username + " was changed elsewhere; the stored version will be reloaded");
+            for (CompletableFuture<Void> waiter : batch.waiters) {
+                waiter.completeExceptionally(e);
+            }
+            return;
+        }
+        for (CompletableFuture<Void> waiter : batch.waiters) {
+            waiter.complete(null);
+        }
+    }
+
+    // A replaced holding is simply upserted: the sink stores it whole.
+    private void writeToSink(String username, Batch batch) {
+        Map<String, Document> upserts = new LinkedHashMap<>();
+        List<String> deletes = new java.util.ArrayList<>();
+        for (Map.Entry<String, Op> entry : batch.stocks.entrySet()) {
+            if (entry.getValue().kind == DELETE) {
+                deletes.add(entry.getKey());
+            } else {
+                upserts.put(entry.getKey(), entry.getValue().doc);
+            }
+        }
+        if (!upserts.isEmpty() || !deletes.isEmpty() || !batch.goals.isEmpty()) {
+            sink.write(username, upserts, deletes, batch.goals);
+        }
+    }
+
+    // False if a version guard missed, i.e. someone else wrote first.
+    private boolean writeEmbedded(String username, Batch batch) {
+        List<String> pulled = new java.util.ArrayList<>();
+        List<Document> pushed = new java.util.ArrayList<>();
+        List<String> changed = new java.util.ArrayList<>();
+        Document sets = new Document();
+        List<Document> arrayFilters = new java.util.ArrayList<>();
+        for (Map.Entry<String, Op> entry : batch.stocks.entrySet()) {
+            String symbol = entry.getKey();
+            Op op = entry.getValue();
+            if (op.kind == DELETE || op.kind == REPLACE) {
+                pulled.add(symbol);
+            }
+            if (op.kind == ADD || op.kind == REPLACE) {
+                pushed.add(op.doc);
+            }
+            if (op.kind == SET) {
+                String id = "s" + changed.size();
+                changed.add(symbol);
+                sets.append("stocks.$[" + id + "].shares", op.doc.get("shares"))
+                    .append("stocks.$[" + id + "].value", op.doc.get("value"));
+                arrayFilters.add(new Document(id + ".symbol", symbol));
+            }
+        }
+
+        Long version;
+        synchronized (this) {
+            version = versions.get(username);
+        }
+        List<WriteModel<Document>> models = new java.util.ArrayList<>(4);
+        if (!changed.isEmpty()) {
+            Document filter = guard(username, version, models.size())
+                    .append("stocks.symbol", new Document("$all", changed));
+            models.add(new UpdateOneModel<>(filter, versioned(new Document("$set", sets)),
+                    new UpdateOptions().arrayFilters(arrayFilters)));
+        }
+        if (!pulled.isEmpty()) {
+            Document pull = new Document("stocks", new Document("symbol", new Document("$in", pulled)));
+            models.add(new UpdateOneModel<>(guard(username, version, models.size()),
+                    versioned(new Document("$pull", pull))));
+        }
+        if (!pushed.isEmpty()) {
+            Document push = new Document("stocks", new Document("$each", pushed));
+            models.add(new UpdateOneModel<>(guard(username, version, models.size()),
+                    versioned(new Document("$push", push))));
+        }
+        if (!batch.goals.isEmpty()) {
+            Document push = new Document("goals", new Document("$each", batch.goals));
+            models.add(new UpdateOneModel<>(guard(username, version, models.size()),
+                    versioned(new Document("$push", push))));
+        }
+
+        if (!models.isEmpty()) {
+            if (version == null) {
+                // Unguarded, so the user's document may not exist yet (no
+                // load has run); create it first or every update misses.
+                models.add(0, new UpdateOneModel<>(new Document("username", username),
+                        new Document("$setOnInsert", new Document("stocks", new java.util.ArrayList<>())
+                                .append("goals", new java.util.ArrayList<>())
+                                .append("version", 0L)),
+                        new UpdateOptions().upsert(true)));
+            }
+            MongoCollection<Document> portfolioCollection = MongoDBConnection.getDatabase().getCollection("portfolio");
+            BulkWriteResult result = portfolioCollection.bulkWrite(models, new BulkWriteOptions().ordered(true));
+            synchronized (this) {
+                if (result.getMatchedCount() + result.getUpserts().size() < models.size()) {
+                    // Guarded updates stop matching after the first miss,
+                    // so the stored version is no longer known.
+                    versions.remove(username);
+                    stale.add(username);
+                    return false;
+                }
+                if (version != null) {
+                    versions.put(username, version + models.size());
+                }
+            }
+        }
+        return true;
+    }
+
+    // The k-th update of a batch expects the version left by the k before it.
+    private static Document guard(String username, Long version, int index) {
+        Document filter = new Document("username", username);
+        if (version != null) {
+            filter.append("version", version + index);
+        }
+        return filter;
+    }
+
+    private static Document versioned(Document update) {
+        return update.append("$inc", new Document("version", 1L));
+    }
+
+    private static class Op {
+        int kind;
+        Document doc;
+
+        Op(int kind, Document doc) {
+            this.kind = kind;
+            this.doc = doc;
+        }
+    }
+
+    private static class Batch {
+        final Map<String, Op> stocks = new LinkedHashMap<>();
+        final List<Document> goals = new java.util.ArrayList<>();
+        final Deque<CompletableFuture<Void>> waiters = new ArrayDeque<>();
+        int size;
+
+        // Folds the mutation into the symbol's net effect for this batch.
+        void apply(String symbol, int kind, Document doc) {
+            Op op = stocks.get(symbol);
+            if (op == null) {
+                stocks.put(symbol, new Op(kind, doc));
+            } else if (kind == DELETE) {
+                if (op.kind == ADD) {
+                    stocks.remove(symbol);
+                } else {
+                    op.kind = DELETE;
+                    op.doc = null;
+                }
+            } else if (op.kind == DELETE) {
+                op.kind = REPLACE;
+                op.doc = doc;
+            } else {
+                op.doc = doc;
+            }
+        }
+    }
+}